@@ -0,0 +1,162 @@
+package uk.org.binky.lexinator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * Text that can grow while it is being lexed, such as a log file being written.
+ * A Lexer given an AppendableText runs in follow mode: when a state reaches the
+ * end of the text so far, the Lexer suspends, and getToken returns null
+ * until more text is appended. The end of the text is only final after close.
+ * A step that ran into the end of the text is undone and run again later;
+ * the Lexer restores its own position, tokens and modes, but not the fields
+ * that States change themselves, unless the Lexer overrides saveStep and undoStep.
+ * The text is never trimmed: all text appended stays in memory, so following
+ * a log that keeps growing uses memory without bound.
+ * Appending and lexing must happen on the same thread.
+ */
+public final class AppendableText implements CharSequence {
+	private char[] chars = new char[1024];
+	private int length = 0;
+	private boolean closed = false;
+	private final CharsetDecoder decoder;
+	private final ByteBuffer bytes = ByteBuffer.allocate(8192);
+
+	/**
+	 * Same as AppendableText(UTF-8)
+	 */
+	public AppendableText() {
+		this(Charset.forName("UTF-8"));
+	}
+
+	/**
+	 * Create an empty text.
+	 *
+	 * @param charset The character set used by poll
+	 */
+	public AppendableText(final Charset charset) {
+		this.decoder = charset.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	 * Add text at the end.
+	 *
+	 * @param s The text to add
+	 * @return this
+	 */
+	public AppendableText append(final CharSequence s) {
+		final int n = s.length();
+		ensure(n);
+		for (int i=0; i<n; i++) {
+			chars[length + i] = s.charAt(i);
+		}
+		length += n;
+		return this;
+	}
+
+	/**
+	 * Add characters at the end.
+	 *
+	 * @param c The characters to add
+	 * @param offset The index of the first character in c
+	 * @param count The number of characters
+	 * @return this
+	 */
+	public AppendableText append(final char[] c, final int offset, final int count) {
+		ensure(count);
+		System.arraycopy(c, offset, chars, length, count);
+		length += count;
+		return this;
+	}
+
+	/**
+	 * Read all bytes currently available from the channel, and append them.
+	 * For a FileChannel, this reads from its position to the current end of the file.
+	 * A character split over two reads is appended once it is complete.
+	 *
+	 * @param channel The channel to read from
+	 * @return The number of characters appended
+	 * @throws IOException as thrown by the channel
+	 */
+	public int poll(final ReadableByteChannel channel) throws IOException {
+		final int before = length;
+		while (true) {
+			final int n = channel.read(bytes);
+			decode(false);
+			if (n <= 0) {
+				break;
+			}
+		}
+		return length - before;
+	}
+
+	/**
+	 * Mark the end of the text as final. No more text can be added afterwards.
+	 */
+	public void close() {
+		if (!closed) {
+			decode(true);
+			ensure(16);
+			final CharBuffer out = CharBuffer.wrap(chars, length, chars.length - length);
+			decoder.flush(out);
+			length = out.position();
+			closed = true;
+		}
+	}
+
+	/**
+	 * @return True if close was called.
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+
+	public int length() {
+		return length;
+	}
+
+	public char charAt(final int index) {
+		if (index >= length) {
+			throw new IndexOutOfBoundsException(String.valueOf(index));
+		}
+		return chars[index];
+	}
+
+	public CharSequence subSequence(final int start, final int end) {
+		if (start < 0 || end > length || start > end) {
+			throw new IndexOutOfBoundsException(start + "-" + end);
+		}
+		return new String(chars, start, end - start);
+	}
+
+	@Override
+	public String toString() {
+		return new String(chars, 0, length);
+	}
+
+	private void decode(final boolean last) {
+		bytes.flip();
+		ensure(bytes.remaining() + 1);
+		final CharBuffer out = CharBuffer.wrap(chars, length, chars.length - length);
+		decoder.decode(bytes, out, last);
+		length = out.position();
+		bytes.compact();
+	}
+
+	private void ensure(final int extra) {
+		if (closed) {
+			throw new IllegalStateException("text is closed");
+		}
+		if (length + extra > chars.length) {
+			chars = Arrays.copyOf(chars, Math.max(chars.length * 2, length + extra));
+		}
+	}
+}
@@ -0,0 +1,15 @@
+package uk.org.binky.lexinator;
+
+/**
+ * A sub-matcher for Lexer.memo: one alternative tried by a backtracking state.
+ * An attempt may read input (next, accept, string, ...), but must not emit tokens,
+ * ignore or retry; its result must depend only on the position it starts at.
+ */
+public interface Attempt {
+	/**
+	 * Try to match at the current position.
+	 *
+	 * @return True if it matched, false otherwise
+	 */
+	boolean attempt();
+}
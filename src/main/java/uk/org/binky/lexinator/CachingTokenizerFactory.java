@@ -0,0 +1,307 @@
+package uk.org.binky.lexinator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A TokenizerFactory that remembers the tokens produced for each input.
+ * Results are keyed by two independent 64 bit hashes and the length of the contents,
+ * so a file that has not changed is only lexed once, regardless of its name.
+ * Recently used results are kept in memory, up to a maximum size,
+ * and can also be stored in a cache directory.
+ * Every new result is written to the directory as soon as it is lexed, and files
+ * are never removed from it by this class, so its size is not bounded;
+ * old files can be deleted at any time, for example by age, and are then lexed again.
+ * The lexer identity should change whenever the lexer would produce different tokens,
+ * since results are only valid for the lexer that produced them.
+ *
+ * @param <T> The token type
+ */
+public class CachingTokenizerFactory<T extends Enum<T>> implements TokenizerFactory<T> {
+	private final TokenizerFactory<T> factory;
+	private final T[] constants;
+	private final String identity;
+	private final long maxWeight;
+	private final File directory;
+
+	private final LinkedHashMap<Key, CompactTokens> cache = new LinkedHashMap<Key, CompactTokens>(16, 0.75f, true);
+	private long weight = 0;
+	private long hits = 0;
+	private long diskHits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	/**
+	 * Create a cache in front of factory, which keeps its results in memory only.
+	 *
+	 * @param factory The factory creating the real Tokenizers
+	 * @param type The token type class
+	 * @param identity Identifies the lexer and its version
+	 * @param maxBytes Approximate maximum memory used by cached tokens
+	 */
+	public CachingTokenizerFactory(final TokenizerFactory<T> factory, final Class<T> type, final String identity, final long maxBytes) {
+		this(factory, type, identity, maxBytes, null);
+	}
+
+	/**
+	 * Create a cache in front of factory, which also stores results in a directory.
+	 *
+	 * @param factory The factory creating the real Tokenizers
+	 * @param type The token type class
+	 * @param identity Identifies the lexer and its version
+	 * @param maxBytes Approximate maximum memory used by cached tokens
+	 * @param directory The cache directory, which is not bounded in size, or null to keep results in memory only
+	 */
+	public CachingTokenizerFactory(final TokenizerFactory<T> factory, final Class<T> type, final String identity, final long maxBytes, final File directory) {
+		this.factory = factory;
+		this.constants = type.getEnumConstants();
+		this.identity = identity;
+		this.maxWeight = maxBytes;
+		this.directory = directory;
+	}
+
+	/**
+	 * Return a Tokenizer for the given file. If the contents were seen before,
+	 * the tokens are replayed from the cache and the lexer is not run at all.
+	 * Otherwise all tokens are read from a new Tokenizer and cached first.
+	 *
+	 * @param name Name of the file being parsed
+	 * @param text Contents of the file being parsed
+	 * @return A Tokenizer producing the tokens for text
+	 */
+	public Tokenizer<T> newTokenizer(final String name, final CharSequence text) {
+		final Key key = new Key(text);
+		CompactTokens tokens = lookup(key);
+		if (tokens == null) {
+			tokens = CompactTokens.of(factory.newTokenizer(name, text));
+			store(key, tokens);
+		}
+		return new Replay<T>(name, constants, tokens);
+	}
+
+	/**
+	 * @return The number of inputs found in the cache, in memory or on disk.
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return The number of inputs found in the cache directory, but not in memory.
+	 */
+	public synchronized long getDiskHits() {
+		return diskHits;
+	}
+
+	/**
+	 * @return The number of inputs that had to be lexed.
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return The number of results dropped from memory to stay below the maximum size.
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * @return The approximate memory used by cached tokens.
+	 */
+	public synchronized long getBytes() {
+		return weight;
+	}
+
+	private CompactTokens lookup(final Key key) {
+		synchronized (this) {
+			final CompactTokens tokens = cache.get(key);
+			if (tokens != null) {
+				hits++;
+				return tokens;
+			}
+		}
+		final CompactTokens tokens = load(key);
+		synchronized (this) {
+			if (tokens == null) {
+				misses++;
+				return null;
+			}
+			hits++;
+			diskHits++;
+			remember(key, tokens);
+			return tokens;
+		}
+	}
+
+	private void store(final Key key, final CompactTokens tokens) {
+		synchronized (this) {
+			remember(key, tokens);
+		}
+		save(key, tokens);
+	}
+
+	private void remember(final Key key, final CompactTokens tokens) {
+		final CompactTokens old = cache.put(key, tokens);
+		if (old != null) {
+			weight -= old.weight();
+		}
+		weight += tokens.weight();
+		final Iterator<Map.Entry<Key, CompactTokens>> it = cache.entrySet().iterator();
+		while (weight > maxWeight && it.hasNext()) {
+			final Map.Entry<Key, CompactTokens> eldest = it.next();
+			weight -= eldest.getValue().weight();
+			it.remove();
+			evictions++;
+		}
+	}
+
+	private File file(final Key key) {
+		return new File(directory, String.format("%016x-%016x%016x-%d", hash(identity), key.hash, key.check, key.length));
+	}
+
+	private CompactTokens load(final Key key) {
+		if (directory == null) {
+			return null;
+		}
+		final File file = file(key);
+		if (!file.isFile()) {
+			return null;
+		}
+		try {
+			final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				if (!identity.equals(in.readUTF()) || !key.equals(new Key(in.readLong(), in.readLong(), in.readInt()))) {
+					return null;
+				}
+				return CompactTokens.read(in, file.length(), constants.length);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			// A damaged cache file is treated as a miss, it will be overwritten.
+			return null;
+		}
+	}
+
+	private void save(final Key key, final CompactTokens tokens) {
+		if (directory == null) {
+			return;
+		}
+		final File file = file(key);
+		final File temp = new File(directory, file.getName() + ".tmp" + Thread.currentThread().getId());
+		try {
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+			try {
+				out.writeUTF(identity);
+				out.writeLong(key.hash);
+				out.writeLong(key.check);
+				out.writeInt(key.length);
+				tokens.write(out);
+			} finally {
+				out.close();
+			}
+			if (!temp.renameTo(file)) {
+				temp.delete();
+			}
+		} catch (IOException e) {
+			// Failing to fill the cache directory only costs a miss later on.
+			temp.delete();
+		}
+	}
+
+	/**
+	 * 64 bit FNV-1a over the characters of text.
+	 */
+	static long hash(final CharSequence text) {
+		long h = 0xcbf29ce484222325L;
+		final int length = text.length();
+		for (int i=0; i<length; i++) {
+			h ^= text.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		return h;
+	}
+
+	/**
+	 * The hash, a second hash over the same characters, and the length of a text.
+	 * The second hash is a polynomial hash with a different multiplier,
+	 * finished with the MurmurHash3 mixer, so that inputs colliding in one
+	 * are not likely to collide in the other.
+	 */
+	private static final class Key {
+		final long hash;
+		final long check;
+		final int length;
+
+		Key(final CharSequence text) {
+			long h = 0xcbf29ce484222325L;
+			long c = 0x2545f4914f6cdd1dL;
+			final int length = text.length();
+			for (int i=0; i<length; i++) {
+				final char ch = text.charAt(i);
+				h ^= ch;
+				h *= 0x100000001b3L;
+				c = (c + ch) * 0x9e3779b97f4a7c15L;
+			}
+			c ^= c >>> 33;
+			c *= 0xff51afd7ed558ccdL;
+			c ^= c >>> 33;
+			c *= 0xc4ceb9fe1a85ec53L;
+			c ^= c >>> 33;
+			this.hash = h;
+			this.check = c;
+			this.length = length;
+		}
+
+		Key(final long hash, final long check, final int length) {
+			this.hash = hash;
+			this.check = check;
+			this.length = length;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (hash ^ (hash >>> 32)) ^ length;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			final Key that = (Key) o;
+			return this.hash == that.hash && this.check == that.check && this.length == that.length;
+		}
+	}
+
+	private static final class Replay<T extends Enum<T>> implements Tokenizer<T> {
+		private final String name;
+		private final T[] constants;
+		private final CompactTokens tokens;
+		private int next = 0;
+
+		Replay(final String name, final T[] constants, final CompactTokens tokens) {
+			this.name = name;
+			this.constants = constants;
+			this.tokens = tokens;
+		}
+
+		public Token<T> getToken() {
+			if (next >= tokens.size()) {
+				return null;
+			}
+			return tokens.get(name, constants, next++);
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package uk.org.binky.lexinator;
+
+import java.util.Arrays;
+
+/**
+ * An immutable set of characters, for the run-scanning methods of Lexer.
+ * Membership of ASCII characters is a single bit test; other code points,
+ * including supplementary ones, are looked up in a sorted array or
+ * checked with the matching Character method.
+ * Instances are thread-safe, and are best created once and kept in a constant.
+ */
+public final class CharClass {
+	private static final int KindWhitespace = 1;
+	private static final int KindIdentifierStart = 2;
+	private static final int KindIdentifierPart = 4;
+
+	/**
+	 * All characters for which Character.isWhitespace is true.
+	 */
+	public static final CharClass Whitespace = predicate(KindWhitespace, "");
+
+	/**
+	 * All code points for which Character.isUnicodeIdentifierStart is true.
+	 */
+	public static final CharClass IdentifierStart = predicate(KindIdentifierStart, "");
+
+	/**
+	 * All code points for which Character.isUnicodeIdentifierPart is true.
+	 */
+	public static final CharClass IdentifierPart = predicate(KindIdentifierPart, "");
+
+	/**
+	 * Whitespace, except for the newline character.
+	 */
+	static final CharClass SpaceNoLine = predicate(KindWhitespace, "\n");
+
+	private final long lo;
+	private final long hi;
+	private final int[] others;
+	private final int kinds;
+
+	private CharClass(final long lo, final long hi, final int[] others, final int kinds) {
+		this.lo = lo;
+		this.hi = hi;
+		this.others = others;
+		this.kinds = kinds;
+	}
+
+	/**
+	 * Create a CharClass containing the given characters.
+	 * Surrogate pairs in chars add the supplementary code point they encode.
+	 *
+	 * @param chars The characters in the class
+	 * @return The CharClass
+	 */
+	public static CharClass of(final String chars) {
+		long lo = 0;
+		long hi = 0;
+		int[] others = new int[chars.length()];
+		int n = 0;
+		for (int i=0; i<chars.length(); ) {
+			final int c = chars.codePointAt(i);
+			i += Character.charCount(c);
+			if (c < 64) {
+				lo |= 1L << c;
+			} else if (c < 128) {
+				hi |= 1L << (c - 64);
+			} else {
+				others[n++] = c;
+			}
+		}
+		others = Arrays.copyOf(others, n);
+		Arrays.sort(others);
+		return new CharClass(lo, hi, others, 0);
+	}
+
+	/**
+	 * Create a CharClass containing a range of characters.
+	 *
+	 * @param first The first character in the class
+	 * @param last The last character in the class
+	 * @return The CharClass
+	 */
+	public static CharClass range(final char first, final char last) {
+		final StringBuilder sb = new StringBuilder();
+		for (int c=first; c<=last; c++) {
+			sb.append((char) c);
+		}
+		return of(sb.toString());
+	}
+
+	/**
+	 * Create a CharClass containing all characters of this one and of that one.
+	 *
+	 * @param that Another CharClass
+	 * @return The union of both
+	 */
+	public CharClass union(final CharClass that) {
+		final int[] others = new int[this.others.length + that.others.length];
+		System.arraycopy(this.others, 0, others, 0, this.others.length);
+		System.arraycopy(that.others, 0, others, this.others.length, that.others.length);
+		Arrays.sort(others);
+		return new CharClass(this.lo | that.lo, this.hi | that.hi, others, this.kinds | that.kinds);
+	}
+
+	/**
+	 * Checks if the character is in this class.
+	 * A lone surrogate is only a member if it was added as one.
+	 *
+	 * @param c The character
+	 * @return True if c is a member
+	 */
+	public boolean contains(final char c) {
+		return contains((int) c);
+	}
+
+	/**
+	 * Checks if the code point is in this class.
+	 *
+	 * @param c The code point
+	 * @return True if c is a member
+	 */
+	public boolean contains(final int c) {
+		if (c < 64) {
+			return (lo & (1L << c)) != 0;
+		}
+		if (c < 128) {
+			return (hi & (1L << (c - 64))) != 0;
+		}
+		return (kinds != 0 && kind(kinds, c)) || Arrays.binarySearch(others, c) >= 0;
+	}
+
+	private static boolean kind(final int kinds, final int c) {
+		return ((kinds & KindWhitespace) != 0 && Character.isWhitespace(c))
+			|| ((kinds & KindIdentifierStart) != 0 && Character.isUnicodeIdentifierStart(c))
+			|| ((kinds & KindIdentifierPart) != 0 && Character.isUnicodeIdentifierPart(c));
+	}
+
+	private static CharClass predicate(final int kinds, final String except) {
+		long lo = 0;
+		long hi = 0;
+		for (char c=0; c<128; c++) {
+			if (kind(kinds, c) && except.indexOf(c) < 0) {
+				if (c < 64) {
+					lo |= 1L << c;
+				} else {
+					hi |= 1L << (c - 64);
+				}
+			}
+		}
+		return new CharClass(lo, hi, new int[0], kinds);
+	}
+}
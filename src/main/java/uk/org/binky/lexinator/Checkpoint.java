@@ -0,0 +1,36 @@
+package uk.org.binky.lexinator;
+
+import java.io.Serializable;
+
+/**
+ * A position between two tokens, from which a Lexer can continue later,
+ * possibly in another process. See Lexer.checkpoint and Lexer.resume.
+ */
+public final class Checkpoint implements Serializable {
+	static final long serialVersionUID = 0x5e1f0c7a2b9d4e31L;
+
+	/**
+	 * Offset from the start of the whole text, in characters.
+	 */
+	public final long offset;
+	/**
+	 * Line number at offset.
+	 */
+	public final int line;
+	/**
+	 * Name of the state to continue with, as given to Lexer.nameState,
+	 * or to the LexerDefinition of a LexerCursor.
+	 */
+	public final String state;
+
+	public Checkpoint(final long offset, final int line, final String state) {
+		this.offset = offset;
+		this.line = line;
+		this.state = state;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("offset(%d) line(%d) state(%s)", offset, line, state);
+	}
+}
@@ -0,0 +1,14 @@
+package uk.org.binky.lexinator;
+
+/**
+ * Receives the checkpoints taken periodically by a Lexer; see Lexer.setCheckpoints.
+ */
+public interface CheckpointListener {
+	/**
+	 * Called by getToken, before the Lexer continues past the checkpoint.
+	 * All tokens before the checkpoint have been returned by getToken.
+	 *
+	 * @param checkpoint The checkpoint
+	 */
+	void checkpoint(Checkpoint checkpoint);
+}
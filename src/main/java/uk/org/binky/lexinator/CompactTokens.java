@@ -0,0 +1,142 @@
+package uk.org.binky.lexinator;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A token stream stored as a few flat arrays instead of a list of Token objects.
+ * All token values share a single String; a token's value is the range
+ * between the end of the previous token and its own end.
+ * The file name is not stored, it is given when the tokens are replayed.
+ */
+final class CompactTokens {
+	private static final int MAGIC = 0x4c584354;
+
+	final int[] types;
+	final int[] lines;
+	final int[] ends;
+	final String chars;
+
+	private CompactTokens(final int[] types, final int[] lines, final int[] ends, final String chars) {
+		this.types = types;
+		this.lines = lines;
+		this.ends = ends;
+		this.chars = chars;
+	}
+
+	/**
+	 * Read all (remaining) tokens from the tokenizer.
+	 *
+	 * @param tokenizer The tokenizer to drain
+	 * @return The tokens, in compact form
+	 */
+	static <T extends Enum<T>> CompactTokens of(final Tokenizer<T> tokenizer) {
+		int[] types = new int[64];
+		int[] lines = new int[64];
+		int[] ends = new int[64];
+		final StringBuilder chars = new StringBuilder();
+		int count = 0;
+		while (true) {
+			final Token<T> token = tokenizer.getToken();
+			if (token == null) {
+				break;
+			}
+			if (count == types.length) {
+				types = Arrays.copyOf(types, count * 2);
+				lines = Arrays.copyOf(lines, count * 2);
+				ends = Arrays.copyOf(ends, count * 2);
+			}
+			chars.append(token.value);
+			types[count] = token.type == null ? -1 : token.type.ordinal();
+			lines[count] = token.line;
+			ends[count] = chars.length();
+			count++;
+		}
+		return new CompactTokens(Arrays.copyOf(types, count), Arrays.copyOf(lines, count), Arrays.copyOf(ends, count), chars.toString());
+	}
+
+	/**
+	 * @return The number of tokens.
+	 */
+	int size() {
+		return types.length;
+	}
+
+	/**
+	 * @return The approximate number of bytes used by this object.
+	 */
+	long weight() {
+		return 64 + 12L * types.length + 2L * chars.length();
+	}
+
+	/**
+	 * Create token number i.
+	 *
+	 * @param name The file name to use
+	 * @param constants The values of the token type, indexed by ordinal
+	 * @param i Index of the token
+	 * @return The token
+	 */
+	<T extends Enum<T>> Token<T> get(final String name, final T[] constants, final int i) {
+		final int start = i == 0 ? 0 : ends[i - 1];
+		final T type = types[i] < 0 ? null : constants[types[i]];
+		return new Token<T>(name, lines[i], type, chars.substring(start, ends[i]));
+	}
+
+	void write(final DataOutputStream out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(types.length);
+		for (int i=0; i<types.length; i++) {
+			out.writeInt(types[i]);
+			out.writeInt(lines[i]);
+			out.writeInt(ends[i]);
+		}
+		out.writeInt(chars.length());
+		out.writeChars(chars);
+	}
+
+	/**
+	 * Read tokens written by write, checking that they are consistent,
+	 * so that a damaged file can not cause errors when the tokens are replayed.
+	 *
+	 * @param in The stream to read from
+	 * @param size The number of bytes in the stream, as an upper bound for the counts in it
+	 * @param typeCount The number of values of the token type
+	 * @return The tokens
+	 * @throws IOException if the stream could not be read, or holds invalid data
+	 */
+	static CompactTokens read(final DataInputStream in, final long size, final int typeCount) throws IOException {
+		if (in.readInt() != MAGIC) {
+			throw new IOException("not a token cache file");
+		}
+		final int count = in.readInt();
+		if (count < 0 || count > size / 12) {
+			throw new IOException("invalid token count: " + count);
+		}
+		final int[] types = new int[count];
+		final int[] lines = new int[count];
+		final int[] ends = new int[count];
+		for (int i=0; i<count; i++) {
+			types[i] = in.readInt();
+			lines[i] = in.readInt();
+			ends[i] = in.readInt();
+			if (types[i] < -1 || types[i] >= typeCount) {
+				throw new IOException("invalid token type: " + types[i]);
+			}
+			if (ends[i] < (i == 0 ? 0 : ends[i - 1])) {
+				throw new IOException("invalid token end: " + ends[i]);
+			}
+		}
+		final int length = in.readInt();
+		if (length < 0 || length > size / 2 || (count > 0 && ends[count - 1] > length)) {
+			throw new IOException("invalid text length: " + length);
+		}
+		final char[] chars = new char[length];
+		for (int i=0; i<chars.length; i++) {
+			chars[i] = in.readChar();
+		}
+		return new CompactTokens(types, lines, ends, new String(chars));
+	}
+}
@@ -0,0 +1,362 @@
+package uk.org.binky.lexinator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Measures a lexer against a corpus of real input files.
+ * The files are read into memory once, then lexed through getToken over and over,
+ * first for a warmup period and then for a measurement period.
+ * The result is printed as key=value lines, to be compared between versions.
+ * Run it as:
+ * java uk.org.binky.lexinator.CorpusReplay [-charset name] [-warmup ms] [-measure ms] class path...
+ * where class is a TokenizerFactory with a public no-argument constructor,
+ * or a Tokenizer with a public (String name, CharSequence text) constructor,
+ * and each path is a file, or a directory of files.
+ */
+public final class CorpusReplay {
+	/**
+	 * The number of latency buckets, enough for any long; see bucket.
+	 */
+	private static final int Buckets = 61 * 16;
+
+	private final TokenizerFactory<?> factory;
+	private final String[] names;
+	private final String[] texts;
+	private final long bytes;
+	private long slowest;
+
+	/**
+	 * The measurements of one run.
+	 */
+	public static final class Result {
+		/**
+		 * The number of files lexed per pass.
+		 */
+		public final int files;
+		/**
+		 * The number of passes over all files during the measurement.
+		 */
+		public final long passes;
+		/**
+		 * The total number of bytes lexed during the measurement.
+		 */
+		public final long bytes;
+		/**
+		 * The total number of tokens read during the measurement.
+		 */
+		public final long tokens;
+		/**
+		 * The duration of the measurement, in nanoseconds.
+		 */
+		public final long nanos;
+		/**
+		 * The number of files lexed per latency bucket; see bucket.
+		 */
+		private final long[] histogram;
+		/**
+		 * The longest time taken to lex a file, in nanoseconds.
+		 */
+		private final long max;
+		/**
+		 * The bytes allocated during the measurement, or -1 if unknown.
+		 */
+		public final long allocated;
+
+		Result(final int files, final long passes, final long bytes, final long tokens, final long nanos, final long[] histogram, final long max, final long allocated) {
+			this.files = files;
+			this.passes = passes;
+			this.bytes = bytes;
+			this.tokens = tokens;
+			this.nanos = nanos;
+			this.histogram = histogram;
+			this.max = max;
+			this.allocated = allocated;
+		}
+
+		/**
+		 * The latencies are kept in buckets, so this is the upper bound
+		 * of the bucket holding the percentile, within about 6% of the actual time.
+		 *
+		 * @param percent A percentage, from 0 to 100
+		 * @return The time taken to lex a file at that percentile, in nanoseconds
+		 */
+		public long latency(final double percent) {
+			final long count = files * passes;
+			if (count == 0) {
+				return 0;
+			}
+			final long rank = Math.max(1, (long) Math.ceil(percent / 100 * count));
+			long seen = 0;
+			for (int i=0; i<histogram.length; i++) {
+				seen += histogram[i];
+				if (seen >= rank) {
+					return Math.min(max, upper(i));
+				}
+			}
+			return max;
+		}
+
+		/**
+		 * Print the result as key=value lines.
+		 *
+		 * @param out The stream to print to
+		 */
+		public void write(final PrintStream out) {
+			final double seconds = nanos / 1e9;
+			out.println("files=" + files);
+			out.println("passes=" + passes);
+			out.println("bytes=" + bytes);
+			out.println("tokens=" + tokens);
+			out.println(String.format(Locale.ROOT, "seconds=%.3f", seconds));
+			out.println(String.format(Locale.ROOT, "mb_per_s=%.3f", bytes / 1e6 / seconds));
+			out.println(String.format(Locale.ROOT, "tokens_per_s=%.0f", tokens / seconds));
+			out.println(String.format(Locale.ROOT, "latency_p50_us=%.1f", latency(50) / 1e3));
+			out.println(String.format(Locale.ROOT, "latency_p90_us=%.1f", latency(90) / 1e3));
+			out.println(String.format(Locale.ROOT, "latency_p99_us=%.1f", latency(99) / 1e3));
+			out.println(String.format(Locale.ROOT, "latency_max_us=%.1f", latency(100) / 1e3));
+			if (allocated < 0 || tokens == 0) {
+				out.println("alloc_bytes_per_token=-1");
+			} else {
+				out.println(String.format(Locale.ROOT, "alloc_bytes_per_token=%.1f", (double) allocated / tokens));
+			}
+		}
+	}
+
+	/**
+	 * Read the corpus into memory.
+	 *
+	 * @param factory Creates the Tokenizer for each file
+	 * @param paths Files, or directories whose files are all read
+	 * @param charset The character set of the files
+	 * @throws IOException if a file could not be read
+	 */
+	public CorpusReplay(final TokenizerFactory<?> factory, final List<File> paths, final Charset charset) throws IOException {
+		final List<File> files = new ArrayList<File>();
+		for (final File path : paths) {
+			collect(path, files);
+		}
+		this.factory = factory;
+		this.names = new String[files.size()];
+		this.texts = new String[files.size()];
+		long bytes = 0;
+		for (int i=0; i<names.length; i++) {
+			names[i] = files.get(i).getPath();
+			texts[i] = read(files.get(i), charset);
+			bytes += files.get(i).length();
+		}
+		this.bytes = bytes;
+	}
+
+	/**
+	 * Lex the corpus for at least warmup milliseconds, then measure
+	 * whole passes over it for at least measure milliseconds.
+	 *
+	 * @param warmup The warmup period, in milliseconds
+	 * @param measure The measurement period, in milliseconds
+	 * @return The measurements
+	 */
+	public Result run(final long warmup, final long measure) {
+		final long warmupEnd = System.nanoTime() + warmup * 1000000L;
+		do {
+			pass(null);
+		} while (System.nanoTime() < warmupEnd);
+
+		// Allocated before reading the allocation counter, so it is not counted.
+		final long[] histogram = new long[Buckets];
+		final Method allocatedBytes = allocatedBytes();
+		final long allocatedBefore = allocated(allocatedBytes);
+		final long start = System.nanoTime();
+		final long measureEnd = start + measure * 1000000L;
+		long passes = 0;
+		long tokens = 0;
+		slowest = 0;
+		do {
+			tokens += pass(histogram);
+			passes++;
+		} while (System.nanoTime() < measureEnd);
+		final long nanos = System.nanoTime() - start;
+		final long allocatedAfter = allocated(allocatedBytes);
+
+		final long allocated = allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore;
+		return new Result(names.length, passes, bytes * passes, tokens, nanos, histogram, slowest, allocated);
+	}
+
+	/**
+	 * Lex every file once, counting the time each took in histogram, unless it is null.
+	 *
+	 * @return The number of tokens read
+	 */
+	private long pass(final long[] histogram) {
+		long tokens = 0;
+		for (int i=0; i<names.length; i++) {
+			final long start = System.nanoTime();
+			final Tokenizer<?> tokenizer = factory.newTokenizer(names[i], texts[i]);
+			while (tokenizer.getToken() != null) {
+				tokens++;
+			}
+			final long elapsed = System.nanoTime() - start;
+			if (histogram != null) {
+				histogram[bucket(elapsed)]++;
+				if (elapsed > slowest) {
+					slowest = elapsed;
+				}
+			}
+		}
+		return tokens;
+	}
+
+	/**
+	 * The histogram bucket for a latency in nanoseconds. Below 16ns every
+	 * value has a bucket of its own; above that, each power of two is split
+	 * into 16 buckets, so a bucket is at most 1/16th of its values wide.
+	 */
+	static int bucket(final long nanos) {
+		if (nanos < 16) {
+			return (int) Math.max(0, nanos);
+		}
+		final int exp = 63 - Long.numberOfLeadingZeros(nanos);
+		return (exp - 3) * 16 + (int) ((nanos >>> (exp - 4)) & 15);
+	}
+
+	/**
+	 * @return The largest latency in the given bucket, in nanoseconds.
+	 */
+	static long upper(final int bucket) {
+		if (bucket < 16) {
+			return bucket;
+		}
+		final int exp = bucket / 16 + 3;
+		return ((16L + bucket % 16 + 1) << (exp - 4)) - 1;
+	}
+
+	/**
+	 * The allocation counter of the current thread, which is only available
+	 * on JVMs providing com.sun.management.ThreadMXBean.
+	 */
+	private static Method allocatedBytes() {
+		try {
+			final Class<?> c = Class.forName("com.sun.management.ThreadMXBean");
+			if (c.isInstance(ManagementFactory.getThreadMXBean())) {
+				return c.getMethod("getThreadAllocatedBytes", long.class);
+			}
+		} catch (final Exception e) {
+			// Not available on this JVM.
+		}
+		return null;
+	}
+
+	private static long allocated(final Method allocatedBytes) {
+		if (allocatedBytes == null) {
+			return -1;
+		}
+		try {
+			return (Long) allocatedBytes.invoke(ManagementFactory.getThreadMXBean(), Thread.currentThread().getId());
+		} catch (final Exception e) {
+			return -1;
+		}
+	}
+
+	private static void collect(final File path, final List<File> files) throws IOException {
+		if (path.isDirectory()) {
+			final File[] children = path.listFiles();
+			if (children == null) {
+				throw new IOException("Unable to list " + path);
+			}
+			Arrays.sort(children);
+			for (final File child : children) {
+				collect(child, files);
+			}
+		} else if (path.isFile()) {
+			files.add(path);
+		} else {
+			throw new IOException("No such file: " + path);
+		}
+	}
+
+	private static String read(final File file, final Charset charset) throws IOException {
+		final Reader reader = new InputStreamReader(new FileInputStream(file), charset);
+		try {
+			final StringBuilder sb = new StringBuilder((int) Math.min(file.length(), Integer.MAX_VALUE));
+			final char[] buf = new char[8192];
+			int n;
+			while ((n = reader.read(buf)) > 0) {
+				sb.append(buf, 0, n);
+			}
+			return sb.toString();
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Create the factory from a class name, as described for the class.
+	 *
+	 * @param name The name of a TokenizerFactory or Tokenizer class
+	 * @return A TokenizerFactory
+	 * @throws Exception if the class can not be used
+	 */
+	static TokenizerFactory<?> factory(final String name) throws Exception {
+		final Class<?> c = Class.forName(name);
+		if (TokenizerFactory.class.isAssignableFrom(c)) {
+			return (TokenizerFactory<?>) c.getConstructor().newInstance();
+		}
+		if (Tokenizer.class.isAssignableFrom(c)) {
+			return construct(c.getConstructor(String.class, CharSequence.class));
+		}
+		throw new IllegalArgumentException(name + " is not a TokenizerFactory or Tokenizer");
+	}
+
+	private static <T extends Enum<T>> TokenizerFactory<T> construct(final Constructor<?> constructor) {
+		return new TokenizerFactory<T>() {
+			@SuppressWarnings("unchecked")
+			public Tokenizer<T> newTokenizer(final String name, final CharSequence text) {
+				try {
+					return (Tokenizer<T>) constructor.newInstance(name, text);
+				} catch (final Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+	}
+
+	public static void main(final String[] args) throws Exception {
+		Charset charset = Charset.forName("UTF-8");
+		long warmup = 5000;
+		long measure = 10000;
+		int i = 0;
+		for (; i + 1 < args.length && args[i].startsWith("-"); i += 2) {
+			if (args[i].equals("-charset")) {
+				charset = Charset.forName(args[i + 1]);
+			} else if (args[i].equals("-warmup")) {
+				warmup = Long.parseLong(args[i + 1]);
+			} else if (args[i].equals("-measure")) {
+				measure = Long.parseLong(args[i + 1]);
+			} else {
+				break;
+			}
+		}
+		if (args.length - i < 2) {
+			System.err.println("usage: CorpusReplay [-charset name] [-warmup ms] [-measure ms] class path...");
+			System.exit(2);
+		}
+		final List<File> paths = new ArrayList<File>();
+		for (int j=i+1; j<args.length; j++) {
+			paths.add(new File(args[j]));
+		}
+		final CorpusReplay replay = new CorpusReplay(factory(args[i]), paths, charset);
+		replay.run(warmup, measure).write(System.out);
+	}
+}
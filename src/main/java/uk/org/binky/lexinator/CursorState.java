@@ -0,0 +1,18 @@
+package uk.org.binky.lexinator;
+
+/**
+ * A state in a LexerDefinition. Unlike State, it is given the cursor to work on,
+ * so a single instance can be shared by any number of cursors and threads.
+ * Implementations should therefore not have mutable fields.
+ *
+ * @param <T> The token type
+ */
+public interface CursorState<T extends Enum<T>> {
+	/**
+	 * Run this state on the given cursor.
+	 *
+	 * @param cursor The cursor for the input being lexed
+	 * @return The next state, or null to stop
+	 */
+	CursorState<T> stateMethod(LexerCursor<T> cursor);
+}
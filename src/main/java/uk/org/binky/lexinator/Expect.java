@@ -1,5 +1,9 @@
 package uk.org.binky.lexinator;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
 /**
  * This class can be used to quickly test a lexer (or any other Tokenizer).
  *
@@ -24,9 +28,8 @@ public class Expect<T extends Enum<T>> {
         if (token == null) {
             throw new ExpectException(new Token<T>("???", line, type, value), null);
         }
-        final Token<T> expect = new Token<T>(token.file, line, type, value);
-        if (! token.compare(expect)) {
-            throw new ExpectException(expect, token);
+        if (token.line != line || token.type != type || !token.value.equals(value)) {
+            throw new ExpectException(new Token<T>(token.file, line, type, value), token);
         }
     }
 
@@ -42,4 +45,84 @@ public class Expect<T extends Enum<T>> {
         }
     }
 
+    /**
+     * Record all (remaining) tokens in a golden file, for expectGolden.
+     * The line, type and value of each token are stored, but not the file name.
+     *
+     * @param type The token type class.
+     * @param out The stream to write to; it is flushed, but not closed.
+     * @return The number of tokens written.
+     * @throws IOException as thrown by out.
+     */
+    public long recordGolden(final Class<T> type, final OutputStream out) throws IOException {
+        return GoldenFile.write(tokenizer, type, out);
+    }
+
+    /**
+     * Test helper: assert that all (remaining) tokens match those recorded by recordGolden.
+     * The golden file is streamed, and tokens are compared without allocating.
+     * On the first difference, the exception shows the context tokens before it,
+     * the differing tokens, and up to context expected and received tokens after them.
+     *
+     * @param type The token type class.
+     * @param in The golden file; it is read past its end, and not closed.
+     * @param context The number of tokens to show around a difference.
+     * @return The number of tokens verified.
+     * @throws ExpectException if a token differs, or there are too many or too few.
+     * @throws IOException if the golden file could not be read.
+     */
+    public long expectGolden(final Class<T> type, final InputStream in, final int context) throws ExpectException, IOException {
+        final GoldenFile<T> golden = new GoldenFile<T>(type, in);
+        final Object[] previous = new Object[Math.max(1, context)];
+        long count = 0;
+        while (true) {
+            final boolean more = golden.next();
+            final Token<T> token = tokenizer.getToken();
+            if (!more && token == null) {
+                return count;
+            }
+            if (!more || token == null || !golden.matches(token)) {
+                throw diverged(golden, more, token, previous, count, context);
+            }
+            previous[(int) (count % previous.length)] = token;
+            count++;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private ExpectException diverged(final GoldenFile<T> golden, final boolean more, final Token<T> token, final Object[] previous, final long count, final int context) throws IOException {
+        final String file = token == null ? "???" : token.file;
+        final Token<T> expected = more ? golden.token(file) : null;
+        final StringBuilder sb = new StringBuilder();
+        sb.append("at token ").append(count);
+        for (long i=Math.max(0, count - context); i<count; i++) {
+            line(sb, "  ", (Token<T>) previous[(int) (i % previous.length)]);
+        }
+        if (expected != null) {
+            line(sb, "- ", expected);
+            for (int i=0; i<context && golden.next(); i++) {
+                line(sb, "- ", golden.token(file));
+            }
+        }
+        if (token != null) {
+            line(sb, "+ ", token);
+            for (int i=0; i<context; i++) {
+                final Token<T> next = tokenizer.getToken();
+                if (next == null) {
+                    break;
+                }
+                line(sb, "+ ", next);
+            }
+        }
+        return new ExpectException(expected, token, sb.toString());
+    }
+
+    private static void line(final StringBuilder sb, final String prefix, final Token<?> token) {
+        sb.append('\n').append(prefix)
+            .append("line(").append(token.line)
+            .append(") type(").append(token.type.name())
+            .append(") value(").append(token.value.replace("\n", "\\n"))
+            .append(')');
+    }
+
 }
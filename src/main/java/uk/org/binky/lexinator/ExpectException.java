@@ -4,19 +4,36 @@ public final class ExpectException extends Exception {
 	static final long serialVersionUID = 0x99a58a0c76038d23l;
 	private final Token<?> expected;
 	private final Token<?> received;
+	private final String context;
 
 	public ExpectException(final Token<?> expected, final Token<?> received) {
+		this(expected, received, null);
+	}
+
+	/**
+	 * @param expected The expected token, or null if nothing was expected
+	 * @param received The received token, or null if nothing was received
+	 * @param context Lines describing the surrounding tokens, shown after the difference
+	 */
+	public ExpectException(final Token<?> expected, final Token<?> received, final String context) {
 		this.expected = expected;
 		this.received = received;
+		this.context = context;
 	}
 
 	public ExpectException(final Token<?> received) {
-		this.expected = null;
-		this.received = received;
+		this(null, received, null);
 	}
 	
 	@Override
 	public String toString() {
+		if (context != null) {
+			return difference() + "\n" + context;
+		}
+		return difference();
+	}
+
+	private String difference() {
 		if (this.expected == null) {
 			return String.format("expected nothing, got: file(%s) line(%d) type(%s) value(%s)", received.file, received.line, received.type, received.value);
 		}
@@ -0,0 +1,228 @@
+package uk.org.binky.lexinator;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * The golden token file format used by Expect.recordGolden and Expect.expectGolden.
+ * It starts with a magic number and the names of the token types, so that the
+ * file stays valid when types are reordered. Then, for each token, it holds
+ * the type index plus one, the line relative to the previous token (zigzag encoded),
+ * and the value length and characters, all as unsigned varints.
+ * A type index of zero ends the file. The file name of tokens is not stored.
+ * Both directions work on byte arrays of their own, in blocks of 8 KB;
+ * reading decodes each record into a reused buffer, without allocating.
+ *
+ * @param <T> The token type
+ */
+final class GoldenFile<T extends Enum<T>> {
+	private static final int MAGIC = 0x4c584746;
+	private static final int MaxTypes = 1 << 16;
+
+	private final InputStream in;
+	private final byte[] buf = new byte[8192];
+	private int pos = 0;
+	private int end = 0;
+	private final T[] types;
+	private T type;
+	private int line = 0;
+	private char[] value = new char[64];
+	private int length;
+
+	/**
+	 * Read the header of a golden file.
+	 *
+	 * @param type The token type class
+	 * @param in The stream to read from
+	 * @throws IOException if the header is invalid, or names an unknown token type
+	 */
+	@SuppressWarnings("unchecked")
+	GoldenFile(final Class<T> type, final InputStream in) throws IOException {
+		this.in = in;
+		if (readVarint() != MAGIC) {
+			throw new IOException("not a golden token file");
+		}
+		final int count = readVarint();
+		if (count < 0 || count > MaxTypes) {
+			throw new IOException("invalid token type count in golden file: " + count);
+		}
+		this.types = (T[]) new Enum<?>[count];
+		for (int i=0; i<types.length; i++) {
+			readValue();
+			final String name = new String(value, 0, length);
+			try {
+				types[i] = Enum.valueOf(type, name);
+			} catch (final IllegalArgumentException e) {
+				throw new IOException("unknown token type in golden file: " + name);
+			}
+		}
+	}
+
+	/**
+	 * Write all (remaining) tokens of the tokenizer as a golden file.
+	 *
+	 * @param tokenizer The tokenizer to drain
+	 * @param type The token type class
+	 * @param out The stream to write to; it is flushed, but not closed
+	 * @return The number of tokens written
+	 * @throws IOException as thrown by out
+	 */
+	static <T extends Enum<T>> long write(final Tokenizer<T> tokenizer, final Class<T> type, final OutputStream out) throws IOException {
+		final Output o = new Output(out);
+		o.varint(MAGIC);
+		final T[] constants = type.getEnumConstants();
+		o.varint(constants.length);
+		for (final T c : constants) {
+			o.value(c.name());
+		}
+		long count = 0;
+		int line = 0;
+		while (true) {
+			final Token<T> token = tokenizer.getToken();
+			if (token == null) {
+				break;
+			}
+			final int delta = token.line - line;
+			o.varint(token.type.ordinal() + 1);
+			o.varint((delta << 1) ^ (delta >> 31));
+			o.value(token.value);
+			line = token.line;
+			count++;
+		}
+		o.varint(0);
+		o.flush();
+		return count;
+	}
+
+	/**
+	 * Read the next record.
+	 *
+	 * @return False at the end of the file
+	 * @throws IOException if the file is truncated or damaged
+	 */
+	boolean next() throws IOException {
+		final int index = readVarint();
+		if (index == 0) {
+			return false;
+		}
+		if (index < 0 || index > types.length) {
+			throw new IOException("invalid token type in golden file: " + index);
+		}
+		final int delta = readVarint();
+		type = types[index - 1];
+		line += (delta >>> 1) ^ -(delta & 1);
+		readValue();
+		return true;
+	}
+
+	/**
+	 * @param token A token
+	 * @return True if the current record has the line, type and value of token
+	 */
+	boolean matches(final Token<T> token) {
+		if (token.line != line || token.type != type || token.value.length() != length) {
+			return false;
+		}
+		for (int i=0; i<length; i++) {
+			if (token.value.charAt(i) != value[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param file The file name to use
+	 * @return The current record as a token
+	 */
+	Token<T> token(final String file) {
+		return new Token<T>(file, line, type, new String(value, 0, length));
+	}
+
+	/**
+	 * Read a value into the buffer. The buffer grows as characters are read,
+	 * so a damaged length ends the file rather than allocating it all.
+	 */
+	private void readValue() throws IOException {
+		final int n = readVarint();
+		if (n < 0) {
+			throw new IOException("invalid value length in golden file: " + n);
+		}
+		for (int i=0; i<n; i++) {
+			if (i == value.length) {
+				value = Arrays.copyOf(value, value.length * 2);
+			}
+			final int c = readVarint();
+			if (c < 0 || c > Character.MAX_VALUE) {
+				throw new IOException("invalid character in golden file: " + c);
+			}
+			value[i] = (char) c;
+		}
+		length = n;
+	}
+
+	private int readVarint() throws IOException {
+		int v = 0;
+		for (int shift=0; shift<32; shift+=7) {
+			if (pos == end) {
+				fill();
+			}
+			final int b = buf[pos++];
+			v |= (b & 0x7f) << shift;
+			if (b >= 0) {
+				return v;
+			}
+		}
+		throw new IOException("invalid varint in golden token file");
+	}
+
+	private void fill() throws IOException {
+		final int n = in.read(buf, 0, buf.length);
+		if (n <= 0) {
+			throw new EOFException("truncated golden token file");
+		}
+		pos = 0;
+		end = n;
+	}
+
+	/**
+	 * Encodes varints into a buffer of its own, writing it out in blocks.
+	 */
+	private static final class Output {
+		private final OutputStream out;
+		private final byte[] buf = new byte[8192];
+		private int n = 0;
+
+		Output(final OutputStream out) {
+			this.out = out;
+		}
+
+		void value(final String value) throws IOException {
+			varint(value.length());
+			for (int i=0; i<value.length(); i++) {
+				varint(value.charAt(i));
+			}
+		}
+
+		void varint(int v) throws IOException {
+			if (n > buf.length - 5) {
+				out.write(buf, 0, n);
+				n = 0;
+			}
+			while ((v & ~0x7f) != 0) {
+				buf[n++] = (byte) ((v & 0x7f) | 0x80);
+				v >>>= 7;
+			}
+			buf[n++] = (byte) v;
+		}
+
+		void flush() throws IOException {
+			out.write(buf, 0, n);
+			n = 0;
+			out.flush();
+		}
+	}
+}
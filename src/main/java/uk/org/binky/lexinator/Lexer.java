@@ -1,13 +1,23 @@
 package uk.org.binky.lexinator;
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Implements a basic FSM-style Lexer.
- * When extending this class, no methods should be overridden.
+ * When extending this class, no methods should be overridden,
+ * except for reset, saveStep and undoStep, as described there.
  * In the constructor, after super, make sure you call setState,
  * so that the Lexer knows which state to start with.
+ * States are either State objects, or codes in a StateTable;
+ * the two can be mixed using enter and leave.
  *
  * @param <T> The token type to use (must contain at least an error value, given to the constructor)
  */
@@ -17,14 +27,45 @@ public abstract class Lexer<T extends Enum<T>> implements Tokenizer<T> {
 	 */
 	public static final char EndOfText = '\u0003';
 
+	private static final int MemoSize = 1024;
+	private static final int MaxMatchers = 64;
+
 	private final T tokenTypeError;
 	private final T tokenTypeWarning;
-	private final String name;
-	private final CharSequence text;
+	private String name;
+	private CharSequence text;
 
-	private final LinkedList<Token<T>> tokens = new LinkedList<Token<T>>();
+	private final ArrayDeque<Token<T>> tokens = new ArrayDeque<Token<T>>();
+	private EnumSet<T> mask = null;
+	private IdentityHashMap<Pattern, Matcher> matchers = null;
+	private Memo memo = null;
+	private int limit = -1;
+	private State[] modeResume = null;
+	private int[] modeLimit = null;
+	private int modeDepth = 0;
+	private boolean failed = false;
+	private AppendableText growing = null;
+	private boolean starved = false;
+	private boolean suspended = false;
+	private int suspendedAt = 0;
+	private IdentityHashMap<State, String> stateNames = null;
+	private HashMap<String, State> namedStates = null;
+	private CheckpointListener checkpoints = null;
+	private int checkpointInterval = 0;
+	private int lastCheckpoint = 0;
+	private long base = 0;
+	private CharClass resync = null;
+	private State recovery = null;
+	private int maxErrors = 0;
+	private int errors = 0;
+	private int resyncPos = -1;
+	private State initialState = null;
 	private State state = null;
-	private Mark mark = new Mark();
+	private StateTable initialTable = null;
+	private int initialCode = 0;
+	private StateTable table = null;
+	private int code = 0;
+	private Mark mark = Mark.START;
 	
 	/**
 	 * Start a Lexer for a file with the given name and contents.
@@ -38,6 +79,7 @@ public abstract class Lexer<T extends Enum<T>> implements Tokenizer<T> {
 	protected Lexer(final String name, final CharSequence text, final T tokenTypeError, final T tokenTypeWarning) {
 		this.name = name;
 		this.text = text;
+		this.growing = text instanceof AppendableText ? (AppendableText) text : null;
 		this.tokenTypeError = tokenTypeError;
 		this.tokenTypeWarning = tokenTypeWarning;
 	}
@@ -61,7 +103,113 @@ public abstract class Lexer<T extends Enum<T>> implements Tokenizer<T> {
 	 * @param state The initial state function to use
 	 */
 	protected void setState(State state) {
+		this.initialState = state;
+		this.state = state;
+		this.initialTable = null;
+		this.table = null;
+	}
+
+	/**
+	 * Set the initial state of the Lexer to a state in a StateTable.
+	 * This can be called from the constructor instead of setState(State).
+	 *
+	 * @param table The StateTable to start with
+	 * @param code The initial state code within table
+	 */
+	protected void setState(final StateTable table, final int code) {
+		this.initialState = null;
+		this.state = null;
+		this.initialTable = table;
+		this.initialCode = code;
+		this.table = table;
+		this.code = code;
+	}
+
+	/**
+	 * Continue in a StateTable. This is meant to be returned from a State,
+	 * as in: return enter(table, code);
+	 *
+	 * @param table The StateTable to continue with
+	 * @param code The state code within table to continue with
+	 * @return null
+	 */
+	protected State enter(final StateTable table, final int code) {
+		this.table = table;
+		this.code = code;
+		return null;
+	}
+
+	/**
+	 * Leave the current StateTable and continue with a State. This is meant
+	 * to be returned from a StateTable, as in: return leave(state);
+	 *
+	 * @param state The State to continue with, or null to stop
+	 * @return StateTable.Exit
+	 */
+	protected int leave(final State state) {
 		this.state = state;
+		return StateTable.Exit;
+	}
+
+	/**
+	 * Start over with a new file, so that the Lexer can be reused.
+	 * Any tokens not yet read are dropped, and the Lexer starts again
+	 * with the state passed to setState.
+	 * Lexers that keep per-file values in fields of their own should
+	 * override this, call super.reset, and reset those fields as well.
+	 *
+	 * @param name Name of the file being parsed
+	 * @param text Contents of the file being parsed
+	 */
+	public void reset(final String name, final CharSequence text) {
+		this.name = name;
+		this.text = text;
+		this.growing = text instanceof AppendableText ? (AppendableText) text : null;
+		this.starved = false;
+		this.suspended = false;
+		this.lastCheckpoint = 0;
+		this.base = 0;
+		this.errors = 0;
+		this.resyncPos = -1;
+		this.tokens.clear();
+		this.state = initialState;
+		this.table = initialTable;
+		this.code = initialCode;
+		this.mark = Mark.START;
+		while (modeDepth > 0) {
+			modeResume[--modeDepth] = null;
+		}
+		this.limit = -1;
+		if (matchers != null) {
+			for (final Matcher m : matchers.values()) {
+				m.reset(text);
+			}
+		}
+		if (memo != null) {
+			memo.clear();
+		}
+	}
+
+	/**
+	 * Only emit tokens of the given types. Tokens of other types are
+	 * dropped by the emitting methods before they are created,
+	 * their text is skipped as if ignore was called.
+	 * This applies to error and warning tokens as well.
+	 *
+	 * @param types The token types to emit, or null to emit all tokens
+	 */
+	public void setMask(final EnumSet<T> types) {
+		this.mask = types == null ? null : EnumSet.copyOf(types);
+	}
+
+	/**
+	 * Checks if tokens of the given type are emitted.
+	 *
+	 * @param type Token type
+	 * @return false if tokens of this type are dropped by setMask
+	 */
+	protected boolean emits(final T type) {
+		return mask == null || mask.contains(type);
 	}
 
 	/**
@@ -87,23 +235,301 @@ public abstract class Lexer<T extends Enum<T>> implements Tokenizer<T> {
 
 	/**
 	 * Fetch the next token.
+	 * In follow mode, null can also mean that more text is needed first; see suspended.
 	 * 
 	 * @return The next token
 	 */
 	public Token<T> getToken() {
 		Token<T> token = tokens.pollFirst();
-		while(token == null && state != null) {
-			step();
+		while(token == null && (state != null || table != null || modeDepth > 0)) {
+			if (suspended) {
+				if (growing.length() == suspendedAt && !growing.isClosed()) {
+					return null;
+				}
+				suspended = false;
+			}
+			if (checkpoints != null && mark.pos - lastCheckpoint >= checkpointInterval) {
+				periodicCheckpoint();
+			}
+			if (growing == null) {
+				step();
+			} else {
+				followStep();
+			}
 			token = tokens.pollFirst();
 		}
 		return token;
 	}
 
+	/**
+	 * Give a State a name, so that checkpoints can refer to it.
+	 * Checkpoints can only be taken when the Lexer is about to run a named State.
+	 *
+	 * @param name The name; unique within this Lexer
+	 * @param state The State
+	 */
+	protected void nameState(final String name, final State state) {
+		if (stateNames == null) {
+			stateNames = new IdentityHashMap<State, String>();
+			namedStates = new HashMap<String, State>();
+		}
+		stateNames.put(state, name);
+		namedStates.put(name, state);
+	}
+
+	/**
+	 * Take a checkpoint, if the Lexer is at a point where it can continue from one:
+	 * all tokens so far have been read, the next token has not been started,
+	 * the next State is named, and no mode or StateTable is active.
+	 *
+	 * @return The checkpoint, or null if no checkpoint can be taken right now.
+	 */
+	public Checkpoint checkpoint() {
+		if (state == null || table != null || modeDepth > 0 || suspended
+				|| !tokens.isEmpty() || mark.pos != mark.start) {
+			return null;
+		}
+		final String name = checkpointName();
+		if (name == null) {
+			return null;
+		}
+		return new Checkpoint(base + mark.pos, mark.line, name);
+	}
+
+	/**
+	 * @return The name of the next State, for a checkpoint, or null if it has none.
+	 */
+	String checkpointName() {
+		return stateNames == null ? null : stateNames.get(state);
+	}
+
+	/**
+	 * @param name The state name of a checkpoint
+	 * @return The State to continue with, or null if name is unknown.
+	 */
+	State checkpointState(final String name) {
+		return namedStates == null ? null : namedStates.get(name);
+	}
+
+	/**
+	 * Continue from a checkpoint. The text must be the same as (or at least
+	 * start with the same characters as) the text the checkpoint was taken from.
+	 * Tokens not yet read are dropped.
+	 *
+	 * @param checkpoint The checkpoint to continue from
+	 * @throws IllegalArgumentException if the state is unknown, or the offset is past the end of the text
+	 */
+	public void resume(final Checkpoint checkpoint) {
+		if (checkpoint.offset > text.length()) {
+			throw new IllegalArgumentException("offset past end of text: " + checkpoint.offset);
+		}
+		final int offset = (int) checkpoint.offset;
+		resume(checkpoint, text, 0);
+		this.mark = new Mark(offset, checkpoint.line, offset, null);
+		this.lastCheckpoint = offset;
+	}
+
+	/**
+	 * Continue from a checkpoint, with only the text from the checkpoint onwards.
+	 * The text must start with the characters at the checkpoint's offset
+	 * in the text the checkpoint was taken from; the offsets of later
+	 * checkpoints still count from the start of that text.
+	 * Tokens not yet read are dropped.
+	 *
+	 * @param checkpoint The checkpoint to continue from
+	 * @param text The text, starting at checkpoint.offset
+	 * @throws IllegalArgumentException if the state is unknown
+	 */
+	public void resume(final Checkpoint checkpoint, final CharSequence text) {
+		resume(checkpoint, text, checkpoint.offset);
+		this.mark = new Mark(0, checkpoint.line, 0, null);
+	}
+
+	private void resume(final Checkpoint checkpoint, final CharSequence text, final long base) {
+		final State resumed = checkpointState(checkpoint.state);
+		if (resumed == null) {
+			throw new IllegalArgumentException("unknown state: " + checkpoint.state);
+		}
+		reset(name, text);
+		this.state = resumed;
+		this.table = null;
+		this.base = base;
+	}
+
+	/**
+	 * Take checkpoints while lexing. Whenever getToken has to lex more text,
+	 * and at least interval characters were lexed since the last checkpoint,
+	 * a checkpoint is taken (if possible) and passed to listener.
+	 *
+	 * @param interval The minimum number of characters between checkpoints
+	 * @param listener Receives the checkpoints, or null to stop taking them
+	 */
+	public void setCheckpoints(final int interval, final CheckpointListener listener) {
+		this.checkpointInterval = interval;
+		this.checkpoints = listener;
+	}
+
+	private void periodicCheckpoint() {
+		final Checkpoint c = checkpoint();
+		if (c != null) {
+			lastCheckpoint = mark.pos;
+			checkpoints.checkpoint(c);
+		}
+	}
+
+	/**
+	 * Checks if the Lexer is waiting for more text in follow mode.
+	 * If so, a null from getToken does not mean the end of the tokens.
+	 *
+	 * @return True if the Lexer reached the end of an AppendableText that is not closed.
+	 */
+	public boolean suspended() {
+		return suspended;
+	}
+
 	private void step() {
-		if (state != null) {
+		failed = false;
+		if (table != null) {
+			code = table.stateMethod(code);
+			if (code < 0) {
+				table = null;
+			}
+		} else if (state != null) {
 			State next = state.stateMethod();
 			state = next;
 		}
+		if (state == null && table == null && modeDepth > 0 && !starved) {
+			if (failed) {
+				// An error stops the whole Lexer, not just the mode.
+				while (modeDepth > 0) {
+					popMode();
+				}
+				state = null;
+			} else {
+				popMode();
+			}
+		}
+	}
+
+	/**
+	 * Run a step, and if it ran into the end of the text so far, undo it,
+	 * so that it can be run again once there is more text.
+	 */
+	private void followStep() {
+		final Mark before = mark;
+		final State beforeState = state;
+		final StateTable beforeTable = table;
+		final int beforeCode = code;
+		final int beforeTokens = tokens.size();
+		final int beforeDepth = modeDepth;
+		final int beforeLimit = limit;
+		final int beforeErrors = errors;
+		final int beforeResync = resyncPos;
+		starved = false;
+		saveStep();
+		step();
+		if (!starved) {
+			return;
+		}
+		starved = false;
+		undoStep();
+		mark = before;
+		state = beforeState;
+		table = beforeTable;
+		code = beforeCode;
+		limit = beforeLimit;
+		errors = beforeErrors;
+		resyncPos = beforeResync;
+		while (tokens.size() > beforeTokens) {
+			tokens.pollLast();
+		}
+		while (modeDepth > beforeDepth) {
+			modeResume[--modeDepth] = null;
+		}
+		if (memo != null) {
+			memo.clear();
+		}
+		suspended = true;
+		suspendedAt = growing.length();
+	}
+
+	/**
+	 * Called in follow mode before each step. A Lexer whose States change
+	 * fields of their own can override this to save those fields, and undoStep
+	 * to restore them; the position, tokens, modes and error count are
+	 * restored by the Lexer itself.
+	 */
+	protected void saveStep() {
+	}
+
+	/**
+	 * Called in follow mode when a step ran into the end of the text so far,
+	 * and is undone, to be run again once there is more text; see saveStep.
+	 */
+	protected void undoStep() {
+	}
+
+	/**
+	 * Called when the end of the text is seen. In follow mode, this means
+	 * more text may change the outcome of the current step.
+	 */
+	private void hitEnd() {
+		if (growing != null && limit < 0 && !growing.isClosed()) {
+			starved = true;
+		}
+	}
+
+	/**
+	 * Switch to another mode: a different set of states, lexing the same text
+	 * into the same tokens, until the given delimiter. To the states of the mode,
+	 * the text appears to end just before the delimiter.
+	 * When the mode stops (its state returns null), the Lexer continues with resume,
+	 * at the position where the mode stopped. Modes can be nested.
+	 * If the mode stops by returning the null from errorf, the Lexer stops
+	 * altogether, as it would outside a mode.
+	 * This is meant to be returned from a State, as in:
+	 * return pushMode(stateScript, "&lt;/script&gt;", stateHtml);
+	 *
+	 * @param mode The State to start the mode with
+	 * @param delimiter The end of the mode's text, or null for the end of the current text.
+	 * If it is not found, the mode runs to the end of the current text.
+	 * @param resume The State to continue with after the mode
+	 * @return mode
+	 */
+	protected State pushMode(final State mode, final String delimiter, final State resume) {
+		if (modeResume == null || modeDepth == modeResume.length) {
+			final int size = modeDepth == 0 ? 4 : modeDepth * 2;
+			modeResume = modeResume == null ? new State[size] : Arrays.copyOf(modeResume, size);
+			modeLimit = modeLimit == null ? new int[size] : Arrays.copyOf(modeLimit, size);
+		}
+		modeResume[modeDepth] = resume;
+		modeLimit[modeDepth] = limit;
+		modeDepth++;
+		if (delimiter != null) {
+			final int found = search(delimiter, mark.pos);
+			if (found >= 0) {
+				limit = found;
+			}
+		}
+		return mode;
+	}
+
+	/**
+	 * @return The number of modes entered with pushMode and not yet finished.
+	 */
+	protected int modeDepth() {
+		return modeDepth;
+	}
+
+	private void popMode() {
+		modeDepth--;
+		state = modeResume[modeDepth];
+		modeResume[modeDepth] = null;
+		limit = modeLimit[modeDepth];
+	}
+
+	private int end() {
+		return limit < 0 ? text.length() : limit;
 	}
 
 	/**
@@ -167,7 +593,11 @@ public abstract class Lexer<T extends Enum<T>> implements Tokenizer<T> {
 	 * @return True if we have reached the end, false otherwise.
 	 */
 	protected boolean eof() {
-		return mark.pos >= text.length();
+		if (mark.pos < end()) {
+			return false;
+		}
+		hitEnd();
+		return true;
 	}
 	
 	/**
@@ -177,6 +607,9 @@ public abstract class Lexer<T extends Enum<T>> implements Tokenizer<T> {
 	 * @param str Token string
 	 */
 	protected void emitString(final T type, final String str) {
+		if (!emits(type)) {
+			return;
+		}
 		tokens.addLast(new Token<T>(name, mark.line, type, str));
 	}
 	
@@ -186,20 +619,69 @@ public abstract class Lexer<T extends Enum<T>> implements Tokenizer<T> {
 	 * @param type Token type
 	 */
 	protected void emit(final T type) {
-		emitString(type, get());
+		if (emits(type)) {
+			tokens.addLast(new Token<T>(name, mark.line, type, get()));
+		}
 		ignore();
 	}
 	
 	/**
 	 * Emit an error token.
+	 * In recovery mode (see setRecovery), the text up to the next resync character
+	 * is then skipped, and the recovery state is returned.
+	 * From a StateTable, return leave(errorf(...)), so that the Lexer continues
+	 * with the recovery state, or stops if there is none.
 	 * 
 	 * @param format As String.format
 	 * @param args As string.format
-	 * @return null
+	 * @return null, or the recovery state
 	 */
 	protected State errorf(final String format, final Object... args) {
-		emitString(tokenTypeError, String.format(format, args));
-		return null;
+		if (emits(tokenTypeError)) {
+			emitString(tokenTypeError, String.format(format, args));
+		}
+		return recover();
+	}
+
+	/**
+	 * Keep lexing after errors. After errorf emits its error token, it skips
+	 * all characters up to the next character in resync, and returns recovery,
+	 * so that the Lexer continues there. If an error occurs right where the
+	 * previous one resynchronized, one character is skipped first, so that
+	 * the Lexer always makes progress.
+	 * After maxErrors errors, or at the end of the text, errorf returns null again.
+	 * To recover into a StateTable, use a recovery State that returns enter(table, code).
+	 *
+	 * @param resync The characters to resynchronize at, such as newline or ';'
+	 * @param recovery The State to continue with, or null to disable recovery
+	 * @param maxErrors The number of errors after which the Lexer stops
+	 */
+	protected void setRecovery(final CharClass resync, final State recovery, final int maxErrors) {
+		this.resync = resync;
+		this.recovery = recovery;
+		this.maxErrors = maxErrors;
+	}
+
+	/**
+	 * @return The number of errors passed to errorf since the start of the text.
+	 */
+	public int errors() {
+		return errors;
+	}
+
+	private State recover() {
+		errors++;
+		if (recovery == null || errors >= maxErrors || eof()) {
+			failed = true;
+			return null;
+		}
+		if (mark.pos == resyncPos) {
+			next();
+		}
+		scan(resync, false);
+		ignore();
+		resyncPos = mark.pos;
+		return recovery;
 	}
 
 	/**
@@ -209,7 +691,7 @@ public abstract class Lexer<T extends Enum<T>> implements Tokenizer<T> {
 	 * @param args As String.format
 	 */
 	protected void warningf(final String format, final Object... args) {
-		if (tokenTypeWarning != null) {
+		if (tokenTypeWarning != null && emits(tokenTypeWarning)) {
 			emitString(tokenTypeWarning, String.format(format, args));
 		}
 	}
@@ -228,12 +710,67 @@ public abstract class Lexer<T extends Enum<T>> implements Tokenizer<T> {
 		return c;
 	}
 	
+	/**
+	 * Return the next Unicode code point in the text, and advance past it.
+	 * A surrogate pair is read as one code point, and undone by a single back.
+	 * A lone surrogate is returned as it is.
+	 *
+	 * @return The next code point to be lexed, or EndOfText
+	 */
+	protected int nextCodePoint() {
+		if (eof()) {
+			return EndOfText;
+		}
+		final char c = text.charAt(mark.pos);
+		if (!Character.isHighSurrogate(c)) {
+			mark = mark.next(c == '\n');
+			return c;
+		}
+		final int cp = codePointAt(mark.pos, end());
+		mark = mark.skip(Character.charCount(cp), 0);
+		return cp;
+	}
+
+	/**
+	 * The code point at p, where text.charAt(p) is a high surrogate.
+	 * In follow mode, a high surrogate at the end may still get its low surrogate.
+	 */
+	private int codePointAt(final int p, final int end) {
+		final char hi = text.charAt(p);
+		if (p + 1 == end) {
+			hitEnd();
+			return hi;
+		}
+		final char lo = text.charAt(p + 1);
+		if (!Character.isLowSurrogate(lo)) {
+			return hi;
+		}
+		return Character.toCodePoint(hi, lo);
+	}
+
 	/**
 	 * Undo the last next. Can be used multiple times, undoes an operation each time,
 	 * but only back until the last retry, or any of the emitting methods.
+	 * After a run read by acceptRun, exceptRun, space, spaceNoLine, find or acceptPattern,
+	 * it undoes the last character of the run. A surrogate pair is undone as a whole.
 	 */
 	protected void back() {
-		mark = mark.back();
+		final Mark prev = mark.prev;
+		if (prev == null || mark.pos - prev.pos <= 1) {
+			mark = mark.back();
+			return;
+		}
+		// Runs are a single Mark; step back within it.
+		int pos = mark.pos - 1;
+		if (pos > prev.pos && Character.isLowSurrogate(text.charAt(pos)) && Character.isHighSurrogate(text.charAt(pos - 1))) {
+			pos--;
+		}
+		if (pos == prev.pos) {
+			mark = prev;
+			return;
+		}
+		final int line = text.charAt(pos) == '\n' ? mark.line - 1 : mark.line;
+		mark = new Mark(pos, line, mark.start, prev);
 	}
 	
 	/**
@@ -281,6 +818,87 @@ public abstract class Lexer<T extends Enum<T>> implements Tokenizer<T> {
 		return true;
 	}
 	
+	/**
+	 * Read text matching the given pattern, starting at the current position.
+	 * The pattern does not have to match the rest of the text, as with Matcher.lookingAt.
+	 * A Matcher is kept for each pattern, so this does not copy the text.
+	 * Patterns are looked up by identity, so they should be constants, compiled once;
+	 * if more than 64 different patterns are used, the Matchers are dropped and created again.
+	 *
+	 * @param pattern The pattern to match.
+	 * @return True if the pattern matched (possibly an empty string), false otherwise.
+	 */
+	protected boolean acceptPattern(final Pattern pattern) {
+		if (matchers == null) {
+			matchers = new IdentityHashMap<Pattern, Matcher>();
+		}
+		Matcher m = matchers.get(pattern);
+		if (m == null) {
+			if (matchers.size() >= MaxMatchers) {
+				matchers.clear();
+			}
+			m = pattern.matcher(text);
+			m.useTransparentBounds(true);
+			m.useAnchoringBounds(false);
+			matchers.put(pattern, m);
+		}
+		m.region(mark.pos, end());
+		final boolean found = m.lookingAt();
+		if (m.hitEnd()) {
+			hitEnd();
+		}
+		if (!found) {
+			return false;
+		}
+		final int end = m.end();
+		mark = mark.skip(end - mark.pos, countLines(mark.pos, end));
+		return true;
+	}
+
+	private int countLines(final int from, final int to) {
+		int lines = 0;
+		for (int i=from; i<to; i++) {
+			if (text.charAt(i) == '\n') {
+				lines++;
+			}
+		}
+		return lines;
+	}
+
+	/**
+	 * Run an attempt, remembering its result for the current position.
+	 * When the same attempt is run at the same position again, for instance
+	 * after unmark or retry, the result is reused instead, and on a match
+	 * the position moves to where the match ended. If the attempt fails,
+	 * the position is restored.
+	 * Only a limited number of results are remembered.
+	 *
+	 * @param attempt The attempt to run; the same instance should be used each time.
+	 * @return True if the attempt matched, false otherwise.
+	 */
+	protected boolean memo(final Attempt attempt) {
+		if (memo == null) {
+			memo = new Memo(MemoSize);
+		}
+		final Mark start = mark;
+		final int slot = memo.slot(attempt, start.pos);
+		if (memo.has(slot, attempt, start.pos)) {
+			final int end = memo.end(slot);
+			if (end < 0) {
+				return false;
+			}
+			mark = mark.skip(end - start.pos, memo.lines(slot));
+			return true;
+		}
+		if (attempt.attempt()) {
+			memo.put(slot, attempt, start.pos, mark.pos, mark.line - start.line);
+			return true;
+		}
+		mark = start;
+		memo.put(slot, attempt, start.pos, -1, 0);
+		return false;
+	}
+
 	/**
 	 * Find the given string in the text.
 	 * 
@@ -288,16 +906,98 @@ public abstract class Lexer<T extends Enum<T>> implements Tokenizer<T> {
 	 * @return True if a match occurred, false otherwise.
 	 */
 	protected boolean find(final String valid) {
-		final Mark start = mark();
-		do {
-			final Mark v = mark();
-			if (string(valid)) {
-				unmark(v);
-				return true;
+		final int from = mark.pos;
+		final int found = search(valid, from);
+		if (found < 0) {
+			return false;
+		}
+		mark = mark.skip(found - from, countLines(from, found));
+		return true;
+	}
+
+	private int search(final String valid, final int from) {
+		final int last = end() - valid.length();
+		for (int p=from; p<=last; p++) {
+			if (matches(p, valid)) {
+				return p;
 			}
-		} while(next() != EndOfText);
-		unmark(start);
-		return false;
+		}
+		hitEnd();
+		return -1;
+	}
+
+	private boolean matches(final int pos, final String valid) {
+		for (int i=0; i<valid.length(); i++) {
+			if (text.charAt(pos + i) != valid.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Advance over all characters that are (or with member false, are not) in chars.
+	 * The position and line number are updated once, for the whole run.
+	 *
+	 * @return The number of characters read.
+	 */
+	private int scan(final String chars, final boolean member) {
+		final int from = mark.pos;
+		final int end = end();
+		int p = from;
+		int lines = 0;
+		while (p < end) {
+			final char c = text.charAt(p);
+			if ((chars.indexOf(c) >= 0) != member) {
+				break;
+			}
+			if (c == '\n') {
+				lines++;
+			}
+			p++;
+		}
+		if (p == end) {
+			hitEnd();
+		}
+		mark = mark.skip(p - from, lines);
+		return p - from;
+	}
+
+	/**
+	 * Like scan(String, boolean), for a CharClass.
+	 * Surrogate pairs are matched as one code point.
+	 */
+	private int scan(final CharClass chars, final boolean member) {
+		return scan(chars, member, mark.pos);
+	}
+
+	/**
+	 * Like scan(CharClass, boolean), starting at p rather than the current position.
+	 */
+	private int scan(final CharClass chars, final boolean member, int p) {
+		final int from = mark.pos;
+		final int end = end();
+		int lines = 0;
+		while (p < end) {
+			int c = text.charAt(p);
+			int n = 1;
+			if (Character.isHighSurrogate((char) c)) {
+				c = codePointAt(p, end);
+				n = Character.charCount(c);
+			}
+			if (chars.contains(c) != member) {
+				break;
+			}
+			if (c == '\n') {
+				lines++;
+			}
+			p += n;
+		}
+		if (p == end) {
+			hitEnd();
+		}
+		mark = mark.skip(p - from, lines);
+		return p - from;
 	}
 
 	/**
@@ -328,11 +1028,57 @@ public abstract class Lexer<T extends Enum<T>> implements Tokenizer<T> {
 	 * @return The number of characters read.
 	 */
 	protected int acceptRun(final String valid) {
-		int num = 0;
-		while (accept(valid)) {
-			num++;
+		return scan(valid, true);
+	}
+
+	/**
+	 * Read a single code point, as long as it is in valid.
+	 *
+	 * @param valid The class of characters to accept.
+	 * @return True if a character was accepted, false otherwise.
+	 */
+	protected boolean accept(final CharClass valid) {
+		final int c = nextCodePoint();
+		if (c == EndOfText) {
+			return false;
+		}
+		if (valid.contains(c)) {
+			return true;
 		}
-		return num;
+		back();
+		return false;
+	}
+
+	/**
+	 * Like accept, but it keeps reading until a character is found
+	 * that is not in the valid class.
+	 *
+	 * @param valid The class of characters to accept.
+	 * @return The number of characters read.
+	 */
+	protected int acceptRun(final CharClass valid) {
+		return scan(valid, true);
+	}
+
+	/**
+	 * Read a Unicode identifier: a code point in CharClass.IdentifierStart,
+	 * followed by any number of code points in CharClass.IdentifierPart.
+	 *
+	 * @return The number of characters read, or 0 if there is no identifier here.
+	 */
+	protected int acceptIdentifier() {
+		if (eof()) {
+			return 0;
+		}
+		final int p = mark.pos;
+		int c = text.charAt(p);
+		if (Character.isHighSurrogate((char) c)) {
+			c = codePointAt(p, end());
+		}
+		if (!CharClass.IdentifierStart.contains(c)) {
+			return 0;
+		}
+		return scan(CharClass.IdentifierPart, true, p + Character.charCount(c));
 	}
 
 	/**
@@ -364,31 +1110,17 @@ public abstract class Lexer<T extends Enum<T>> implements Tokenizer<T> {
 	 * @return The number of characters read.
 	 */
 	protected int exceptRun(final String invalid) {
-		int num = 0;
-		while (except(invalid)) {
-			num++;
-		}
-		return num;
+		return scan(invalid, false);
 	}
 
-	private boolean space(final boolean newline) {
-		boolean found = false;
-		while (true) {
-			final char c = next();
-			if (c == EndOfText) {
-				return found;
-			}
-			if (newline && c == '\n') {
-				back();
-				return found;
-			}
-			if (Character.isWhitespace(c)) {
-				found = true;
-			} else {
-				back();
-				return found;
-			}
-		}
+	/**
+	 * Keeps reading characters until it finds one in the invalid class.
+	 *
+	 * @param invalid The class of characters to reject.
+	 * @return The number of characters read.
+	 */
+	protected int exceptRun(final CharClass invalid) {
+		return scan(invalid, false);
 	}
 
 	/**
@@ -397,7 +1129,7 @@ public abstract class Lexer<T extends Enum<T>> implements Tokenizer<T> {
 	 * @return true if any whitespace was consumed.
 	 */
 	protected boolean space() {
-		return space(false);
+		return scan(CharClass.Whitespace, true) > 0;
 	}
 	
 	/**
@@ -406,6 +1138,6 @@ public abstract class Lexer<T extends Enum<T>> implements Tokenizer<T> {
 	 * @return true if any whitespace was consumed.
 	 */
 	protected boolean spaceNoLine() {
-		return space(true);
+		return scan(CharClass.SpaceNoLine, true) > 0;
 	}
 }
@@ -0,0 +1,513 @@
+package uk.org.binky.lexinator;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * The per-input part of a lexer: the text, the position in it, and the tokens
+ * produced so far. The states come from a shared LexerDefinition, and are
+ * given the cursor to work on; its methods behave like those of Lexer.
+ * A cursor is used by one thread at a time, and can be reused through reset.
+ *
+ * @param <T> The token type
+ */
+public final class LexerCursor<T extends Enum<T>> implements Tokenizer<T> {
+	private final LexerDefinition<T> root;
+	private LexerDefinition<T> definition;
+	private final Engine engine;
+	private CursorState<T> state;
+	private CursorState<T> recovery = null;
+
+	/**
+	 * Start lexing a file with the given definition.
+	 *
+	 * @param definition The lexer definition
+	 * @param name Name of the file being parsed
+	 * @param text Contents of the file being parsed
+	 */
+	public LexerCursor(final LexerDefinition<T> definition, final String name, final CharSequence text) {
+		this.root = definition;
+		this.definition = definition;
+		this.state = definition.initial();
+		this.engine = new Engine(name, text);
+	}
+
+	/**
+	 * @return The definition this cursor currently lexes with; see push.
+	 */
+	public LexerDefinition<T> definition() {
+		return definition;
+	}
+
+	/**
+	 * Start over with a new file, as Lexer.reset.
+	 *
+	 * @param name Name of the file being parsed
+	 * @param text Contents of the file being parsed
+	 */
+	public void reset(final String name, final CharSequence text) {
+		definition = root;
+		state = definition.initial();
+		engine.reset(name, text);
+	}
+
+	/**
+	 * As Lexer.setMask.
+	 *
+	 * @param types The token types to emit, or null to emit all tokens
+	 */
+	public void setMask(final EnumSet<T> types) {
+		engine.setMask(types);
+	}
+
+	/**
+	 * Take a checkpoint, as Lexer.checkpoint. The next state must be named
+	 * in the definition, and no push may be active.
+	 *
+	 * @return The checkpoint, or null if no checkpoint can be taken right now.
+	 */
+	public Checkpoint checkpoint() {
+		return engine.checkpoint();
+	}
+
+	/**
+	 * Continue from a checkpoint, as Lexer.resume.
+	 *
+	 * @param checkpoint The checkpoint to continue from
+	 */
+	public void resume(final Checkpoint checkpoint) {
+		engine.resume(checkpoint);
+	}
+
+	/**
+	 * Continue from a checkpoint with only the rest of the text, as Lexer.resume.
+	 *
+	 * @param checkpoint The checkpoint to continue from
+	 * @param text The text, starting at checkpoint.offset
+	 */
+	public void resume(final Checkpoint checkpoint, final CharSequence text) {
+		engine.resume(checkpoint, text);
+	}
+
+	/**
+	 * Take checkpoints while lexing, as Lexer.setCheckpoints.
+	 *
+	 * @param interval The minimum number of characters between checkpoints
+	 * @param listener Receives the checkpoints, or null to stop taking them
+	 */
+	public void setCheckpoints(final int interval, final CheckpointListener listener) {
+		engine.setCheckpoints(interval, listener);
+	}
+
+	/**
+	 * Test helper: fetch the next token, and assert its values.
+	 *
+	 * @param line Expected line number.
+	 * @param type Expected token type.
+	 * @param value Expected token contents.
+	 * @throws ExpectException if the token failed to match the given arguments.
+	 */
+	public void expect(final int line, final T type, final String value) throws ExpectException {
+		new Expect<T>(this).expect(line, type, value);
+	}
+
+	/**
+	 * Test helper: assert that there are no more tokens.
+	 *
+	 * @throws ExpectException if a token was read, instead of nothing.
+	 */
+	public void expectEnd() throws ExpectException {
+		new Expect<T>(this).expectEnd();
+	}
+
+	/**
+	 * @return The next token
+	 */
+	public Token<T> getToken() {
+		return engine.getToken();
+	}
+
+	/**
+	 * @return True if the cursor is waiting for more text, as Lexer.suspended.
+	 */
+	public boolean suspended() {
+		return engine.suspended();
+	}
+
+	/**
+	 * Fetch all (remaining) tokens.
+	 *
+	 * @return A list of all tokens remaining.
+	 */
+	public List<Token<T>> getAllTokens() {
+		return engine.getAllTokens();
+	}
+
+	/**
+	 * @return The string being accumulated for the next token.
+	 */
+	public String get() {
+		return engine.get();
+	}
+
+	/**
+	 * @return The length of the string accumulated so far.
+	 */
+	public int len() {
+		return engine.len();
+	}
+
+	/**
+	 * @return The current position, for unmark.
+	 */
+	public Mark mark() {
+		return engine.mark();
+	}
+
+	/**
+	 * @param mark A position previously returned by mark.
+	 */
+	public void unmark(final Mark mark) {
+		engine.unmark(mark);
+	}
+
+	/**
+	 * @return True if we have reached the end, false otherwise.
+	 */
+	public boolean eof() {
+		return engine.eof();
+	}
+
+	/**
+	 * @param type Token type
+	 * @return false if tokens of this type are dropped by setMask
+	 */
+	public boolean emits(final T type) {
+		return engine.emits(type);
+	}
+
+	/**
+	 * @param type Token type
+	 * @param str Token string
+	 */
+	public void emitString(final T type, final String str) {
+		engine.emitString(type, str);
+	}
+
+	/**
+	 * @param type Token type
+	 */
+	public void emit(final T type) {
+		engine.emit(type);
+	}
+
+	/**
+	 * Emit the accumulated string as a token, with the keyword type if it
+	 * is a keyword in the definition, or with the given type otherwise.
+	 * The string is only created once, and not at all if setMask drops
+	 * the given type and every keyword type.
+	 *
+	 * @param type Token type for non-keywords
+	 */
+	public void emitKeyword(final T type) {
+		if (!engine.emits(type) && !emitsKeywords()) {
+			engine.ignore();
+			return;
+		}
+		final String value = engine.get();
+		final T keyword = definition.keyword(value);
+		final T actual = keyword == null ? type : keyword;
+		if (engine.emits(actual)) {
+			engine.emitString(actual, value);
+		}
+		engine.ignore();
+	}
+
+	private boolean emitsKeywords() {
+		for (final T keyword : definition.keywordTypes()) {
+			if (engine.emits(keyword)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param format As String.format
+	 * @param args As String.format
+	 * @return null, or the recovery state
+	 */
+	public CursorState<T> errorf(final String format, final Object... args) {
+		if (engine.errorf(format, args) == null) {
+			return null;
+		}
+		return recovery;
+	}
+
+	/**
+	 * Keep lexing after errors, as Lexer.setRecovery.
+	 *
+	 * @param resync The characters to resynchronize at, such as newline or ';'
+	 * @param recovery The state to continue with, or null to disable recovery
+	 * @param maxErrors The number of errors after which the cursor stops
+	 */
+	public void setRecovery(final CharClass resync, final CursorState<T> recovery, final int maxErrors) {
+		this.recovery = recovery;
+		engine.setRecovery(resync, recovery == null ? null : engine.driver, maxErrors);
+	}
+
+	/**
+	 * @return The number of errors since the start of the text.
+	 */
+	public int errors() {
+		return engine.errors();
+	}
+
+	/**
+	 * @param format As String.format
+	 * @param args As String.format
+	 */
+	public void warningf(final String format, final Object... args) {
+		engine.warningf(format, args);
+	}
+
+	/**
+	 * @return The next character to be lexed
+	 */
+	public char next() {
+		return engine.next();
+	}
+
+	/**
+	 * @return The next code point to be lexed, as Lexer.nextCodePoint.
+	 */
+	public int nextCodePoint() {
+		return engine.nextCodePoint();
+	}
+
+	/**
+	 * Undo the last next.
+	 */
+	public void back() {
+		engine.back();
+	}
+
+	/**
+	 * @return The next character to be read by next.
+	 */
+	public char peek() {
+		return engine.peek();
+	}
+
+	/**
+	 * Ignore the string accumulated so far.
+	 */
+	public void ignore() {
+		engine.ignore();
+	}
+
+	/**
+	 * Restart the current token.
+	 */
+	public void retry() {
+		engine.retry();
+	}
+
+	/**
+	 * @param valid The string that must be matched completely.
+	 * @return True if a match occurred, false otherwise.
+	 */
+	public boolean string(final String valid) {
+		return engine.string(valid);
+	}
+
+	/**
+	 * Lex the text up to the delimiter with another definition, as Lexer.pushMode.
+	 * Its states use this cursor, so its tokens come out of this cursor with the
+	 * correct positions, without copying the text. Keywords are looked up in the
+	 * other definition until it stops; then this cursor continues with resume.
+	 * This is meant to be returned from a CursorState, as in:
+	 * return cursor.push(script, "&lt;/script&gt;", stateHtml);
+	 *
+	 * @param mode The definition to lex the embedded text with
+	 * @param delimiter The end of the embedded text, or null for the end of the current text
+	 * @param resume The state to continue with after the embedded text
+	 * @return The initial state of mode
+	 */
+	public CursorState<T> push(final LexerDefinition<T> mode, final String delimiter, final CursorState<T> resume) {
+		engine.pushMode(engine.driver, delimiter, new Resume(definition, resume));
+		definition = mode;
+		return mode.initial();
+	}
+
+	/**
+	 * As Lexer.memo.
+	 *
+	 * @param attempt The attempt to run
+	 * @return True if the attempt matched, false otherwise.
+	 */
+	public boolean memo(final Attempt attempt) {
+		return engine.memo(attempt);
+	}
+
+	/**
+	 * @param valid The string being searched for.
+	 * @return True if a match occurred, false otherwise.
+	 */
+	public boolean find(final String valid) {
+		return engine.find(valid);
+	}
+
+	/**
+	 * @param valid The list of possible characters to accept.
+	 * @return True if a character was accepted, false otherwise.
+	 */
+	public boolean accept(final String valid) {
+		return engine.accept(valid);
+	}
+
+	/**
+	 * @param valid The class of characters to accept.
+	 * @return True if a character was accepted, false otherwise.
+	 */
+	public boolean accept(final CharClass valid) {
+		return engine.accept(valid);
+	}
+
+	/**
+	 * @param valid The list of possible characters to accept.
+	 * @return The number of characters read.
+	 */
+	public int acceptRun(final String valid) {
+		return engine.acceptRun(valid);
+	}
+
+	/**
+	 * @param valid The class of characters to accept.
+	 * @return The number of characters read.
+	 */
+	public int acceptRun(final CharClass valid) {
+		return engine.acceptRun(valid);
+	}
+
+	/**
+	 * @param pattern The pattern to match.
+	 * @return True if the pattern matched, false otherwise.
+	 */
+	public boolean acceptPattern(final Pattern pattern) {
+		return engine.acceptPattern(pattern);
+	}
+
+	/**
+	 * @return The number of characters read by Lexer.acceptIdentifier.
+	 */
+	public int acceptIdentifier() {
+		return engine.acceptIdentifier();
+	}
+
+	/**
+	 * @param invalid The list of characters to reject
+	 * @return True if a character was accepted, false otherwise.
+	 */
+	public boolean except(final String invalid) {
+		return engine.except(invalid);
+	}
+
+	/**
+	 * @param invalid The list of characters to reject.
+	 * @return The number of characters read.
+	 */
+	public int exceptRun(final String invalid) {
+		return engine.exceptRun(invalid);
+	}
+
+	/**
+	 * @param invalid The class of characters to reject.
+	 * @return The number of characters read.
+	 */
+	public int exceptRun(final CharClass invalid) {
+		return engine.exceptRun(invalid);
+	}
+
+	/**
+	 * @return true if any whitespace was consumed.
+	 */
+	public boolean space() {
+		return engine.space();
+	}
+
+	/**
+	 * @return true if any whitespace was consumed.
+	 */
+	public boolean spaceNoLine() {
+		return engine.spaceNoLine();
+	}
+
+	/**
+	 * The Lexer doing the actual work. Its only State runs the cursor's CursorStates.
+	 */
+	private final class Engine extends Lexer<T> {
+		private final State driver = new State() {
+			public State stateMethod() {
+				state = state.stateMethod(LexerCursor.this);
+				return state == null ? null : this;
+			}
+		};
+
+		private LexerDefinition<T> savedDefinition;
+		private CursorState<T> savedState;
+
+		Engine(final String name, final CharSequence text) {
+			super(name, text, definition.tokenTypeError(), definition.tokenTypeWarning());
+			setState(state == null ? null : driver);
+		}
+
+		@Override
+		protected void saveStep() {
+			savedDefinition = definition;
+			savedState = state;
+		}
+
+		@Override
+		protected void undoStep() {
+			definition = savedDefinition;
+			state = savedState;
+		}
+
+		@Override
+		String checkpointName() {
+			return definition == root ? root.stateName(state) : null;
+		}
+
+		@Override
+		State checkpointState(final String name) {
+			final CursorState<T> resumed = root.namedState(name);
+			if (resumed == null) {
+				return null;
+			}
+			definition = root;
+			state = resumed;
+			return driver;
+		}
+	}
+
+	/**
+	 * Restores the outer definition and state after a push.
+	 */
+	private final class Resume implements State {
+		private final LexerDefinition<T> outer;
+		private final CursorState<T> resume;
+
+		Resume(final LexerDefinition<T> outer, final CursorState<T> resume) {
+			this.outer = outer;
+			this.resume = resume;
+		}
+
+		public State stateMethod() {
+			definition = outer;
+			state = resume;
+			return state == null ? null : engine.driver;
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package uk.org.binky.lexinator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The immutable part of a lexer: its states, token types and keywords.
+ * A LexerDefinition is built once, and can then be shared between threads;
+ * each input is lexed by its own LexerCursor, created by newTokenizer.
+ * CharClass and Pattern constants used by the states are immutable as well,
+ * and are best kept in static fields next to the states.
+ *
+ * @param <T> The token type
+ */
+public final class LexerDefinition<T extends Enum<T>> implements TokenizerFactory<T> {
+	private final CursorState<T> initial;
+	private final T tokenTypeError;
+	private final T tokenTypeWarning;
+	private final Map<String, T> keywords;
+	private final List<T> keywordTypes;
+	private final Map<String, CursorState<T>> namedStates;
+	private final Map<CursorState<T>, String> stateNames;
+
+	/**
+	 * Same as LexerDefinition(initial, tokenTypeError, null)
+	 *
+	 * @param initial The state to start with
+	 * @param tokenTypeError Type value for errors
+	 */
+	public LexerDefinition(final CursorState<T> initial, final T tokenTypeError) {
+		this(initial, tokenTypeError, null);
+	}
+
+	/**
+	 * Same as LexerDefinition(initial, tokenTypeError, tokenTypeWarning, an empty map)
+	 *
+	 * @param initial The state to start with
+	 * @param tokenTypeError Type value for errors
+	 * @param tokenTypeWarning Type value for warnings
+	 */
+	public LexerDefinition(final CursorState<T> initial, final T tokenTypeError, final T tokenTypeWarning) {
+		this(initial, tokenTypeError, tokenTypeWarning, Collections.<String, T>emptyMap());
+	}
+
+	/**
+	 * Create a lexer definition.
+	 *
+	 * @param initial The state to start with
+	 * @param tokenTypeError Type value for errors
+	 * @param tokenTypeWarning Type value for warnings, or null
+	 * @param keywords Token types for keywords; the map is copied
+	 */
+	public LexerDefinition(final CursorState<T> initial, final T tokenTypeError, final T tokenTypeWarning, final Map<String, T> keywords) {
+		this(initial, tokenTypeError, tokenTypeWarning, keywords, Collections.<String, CursorState<T>>emptyMap());
+	}
+
+	/**
+	 * Create a lexer definition whose cursors can take checkpoints.
+	 * As with Lexer.nameState, checkpoints can only be taken when a cursor
+	 * is about to run a named state.
+	 *
+	 * @param initial The state to start with
+	 * @param tokenTypeError Type value for errors
+	 * @param tokenTypeWarning Type value for warnings, or null
+	 * @param keywords Token types for keywords; the map is copied
+	 * @param states States by name, for checkpoints; the map is copied
+	 */
+	public LexerDefinition(final CursorState<T> initial, final T tokenTypeError, final T tokenTypeWarning, final Map<String, T> keywords, final Map<String, CursorState<T>> states) {
+		this.initial = initial;
+		this.tokenTypeError = tokenTypeError;
+		this.tokenTypeWarning = tokenTypeWarning;
+		this.keywords = Collections.unmodifiableMap(new HashMap<String, T>(keywords));
+		this.keywordTypes = new ArrayList<T>(new LinkedHashSet<T>(keywords.values()));
+		this.namedStates = new HashMap<String, CursorState<T>>(states);
+		this.stateNames = new IdentityHashMap<CursorState<T>, String>();
+		for (final Map.Entry<String, CursorState<T>> e : states.entrySet()) {
+			stateNames.put(e.getValue(), e.getKey());
+		}
+	}
+
+	/**
+	 * @return The state each cursor starts with.
+	 */
+	public CursorState<T> initial() {
+		return initial;
+	}
+
+	/**
+	 * Look up a keyword.
+	 *
+	 * @param word The word
+	 * @return The token type for word, or null if it is not a keyword
+	 */
+	public T keyword(final String word) {
+		return keywords.get(word);
+	}
+
+	/**
+	 * @return The distinct token types of all keywords.
+	 */
+	List<T> keywordTypes() {
+		return keywordTypes;
+	}
+
+	/**
+	 * @param state A state
+	 * @return The name of state, or null if it has none.
+	 */
+	String stateName(final CursorState<T> state) {
+		return stateNames.get(state);
+	}
+
+	/**
+	 * @param name A state name
+	 * @return The state with that name, or null if there is none.
+	 */
+	CursorState<T> namedState(final String name) {
+		return namedStates.get(name);
+	}
+
+	/**
+	 * Create a cursor to lex the given file with this definition.
+	 *
+	 * @param name Name of the file being parsed
+	 * @param text Contents of the file being parsed
+	 * @return A new cursor
+	 */
+	public LexerCursor<T> newTokenizer(final String name, final CharSequence text) {
+		return new LexerCursor<T>(this, name, text);
+	}
+
+	T tokenTypeError() {
+		return tokenTypeError;
+	}
+
+	T tokenTypeWarning() {
+		return tokenTypeWarning;
+	}
+}
@@ -0,0 +1,82 @@
+package uk.org.binky.lexinator;
+
+/**
+ * A thread-safe pool of Lexers, for lexing many small files without
+ * constructing a new Lexer (and its states) for each one.
+ * Implement create to construct a new Lexer when the pool is empty.
+ * Lexers are reused through Lexer.reset, and should be returned with release
+ * once their tokens have been read.
+ *
+ * @param <T> The token type
+ * @param <L> The Lexer type being pooled
+ */
+public abstract class LexerPool<T extends Enum<T>, L extends Lexer<T>> {
+	private final Object[] free;
+	private int size = 0;
+
+	/**
+	 * Create a pool.
+	 *
+	 * @param capacity The maximum number of idle Lexers kept by the pool
+	 */
+	protected LexerPool(final int capacity) {
+		this.free = new Object[capacity];
+	}
+
+	/**
+	 * Construct a new Lexer for the given file.
+	 *
+	 * @param name Name of the file being parsed
+	 * @param text Contents of the file being parsed
+	 * @return A new Lexer
+	 */
+	protected abstract L create(String name, CharSequence text);
+
+	/**
+	 * Fetch a Lexer for the given file, reusing an idle one if possible.
+	 *
+	 * @param name Name of the file being parsed
+	 * @param text Contents of the file being parsed
+	 * @return A Lexer for text
+	 */
+	public L acquire(final String name, final CharSequence text) {
+		final L lexer = poll();
+		if (lexer == null) {
+			return create(name, text);
+		}
+		lexer.reset(name, text);
+		return lexer;
+	}
+
+	/**
+	 * Return a Lexer to the pool. It must not be used afterwards.
+	 * If the pool is full, the Lexer is dropped.
+	 *
+	 * @param lexer The Lexer being returned
+	 */
+	public void release(final L lexer) {
+		lexer.reset(null, "");
+		synchronized (this) {
+			if (size < free.length) {
+				free[size++] = lexer;
+			}
+		}
+	}
+
+	/**
+	 * @return The number of idle Lexers in the pool.
+	 */
+	public synchronized int idle() {
+		return size;
+	}
+
+	@SuppressWarnings("unchecked")
+	private synchronized L poll() {
+		if (size == 0) {
+			return null;
+		}
+		final L lexer = (L) free[--size];
+		free[size] = null;
+		return lexer;
+	}
+}
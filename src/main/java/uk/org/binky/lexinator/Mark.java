@@ -6,6 +6,8 @@ package uk.org.binky.lexinator;
  * It contains the position, start, line number, and the previous state.
  */
 public final class Mark {
+	static final Mark START = new Mark();
+
 	final int pos, line, start;
 	final Mark prev; 
 	Mark(final int pos, final int line, final int start, final Mark prev) {
@@ -24,6 +26,12 @@ public final class Mark {
 		}
 		return new Mark(pos+1, line + addline, start, this);
 	}
+	Mark skip(final int length, final int lines) {
+		if (length == 0) {
+			return this;
+		}
+		return new Mark(pos+length, line + lines, start, this);
+	}
 	Mark back() {
 		if (prev == null) {
 			return this;
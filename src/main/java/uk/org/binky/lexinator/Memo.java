@@ -0,0 +1,67 @@
+package uk.org.binky.lexinator;
+
+/**
+ * Results of attempts, keyed by attempt and position. This is a direct-mapped
+ * table of fixed size: a new result replaces whatever was in its slot, so
+ * memory use does not depend on the size of the input. Since backtracking
+ * happens around the current position, older entries are the ones replaced.
+ */
+final class Memo {
+	private final Attempt[] attempts;
+	private final int[] positions;
+	private final int[] ends;
+	private final int[] lines;
+	private final int mask;
+
+	/**
+	 * @param size Number of entries, rounded up to a power of two
+	 */
+	Memo(final int size) {
+		int n = 1;
+		while (n < size) {
+			n <<= 1;
+		}
+		this.attempts = new Attempt[n];
+		this.positions = new int[n];
+		this.ends = new int[n];
+		this.lines = new int[n];
+		this.mask = n - 1;
+	}
+
+	int slot(final Attempt attempt, final int pos) {
+		int h = System.identityHashCode(attempt) ^ (pos * 0x9e3779b1);
+		h ^= h >>> 16;
+		return h & mask;
+	}
+
+	boolean has(final int slot, final Attempt attempt, final int pos) {
+		return attempts[slot] == attempt && positions[slot] == pos;
+	}
+
+	/**
+	 * @return The end position of the match, or -1 if the attempt failed
+	 */
+	int end(final int slot) {
+		return ends[slot];
+	}
+
+	/**
+	 * @return The number of newlines in the match
+	 */
+	int lines(final int slot) {
+		return lines[slot];
+	}
+
+	void put(final int slot, final Attempt attempt, final int pos, final int end, final int lines) {
+		this.attempts[slot] = attempt;
+		this.positions[slot] = pos;
+		this.ends[slot] = end;
+		this.lines[slot] = lines;
+	}
+
+	void clear() {
+		for (int i=0; i<attempts.length; i++) {
+			attempts[i] = null;
+		}
+	}
+}
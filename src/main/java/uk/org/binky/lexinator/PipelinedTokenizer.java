@@ -0,0 +1,143 @@
+package uk.org.binky.lexinator;
+
+import java.io.Closeable;
+import java.lang.ref.WeakReference;
+
+/**
+ * Runs a Tokenizer (typically a Lexer) on a thread of its own, so that lexing
+ * and parsing can proceed in parallel. Tokens are handed over through a
+ * lock-free ring buffer, in batches.
+ * The wrapped Tokenizer must not be used by anything else afterwards.
+ * If the wrapped Tokenizer throws, the exception is rethrown from getToken
+ * once all tokens before it have been read.
+ * The lexer thread only holds the PipelinedTokenizer weakly, so when it is
+ * dropped without being closed, the thread stops after the next garbage collection.
+ * A Lexer in follow mode is not supported: a null from getToken is taken as the end,
+ * so getToken throws an IllegalStateException if the Lexer was only suspended.
+ *
+ * @param <T> The token type
+ */
+public final class PipelinedTokenizer<T extends Enum<T>> implements Tokenizer<T>, Closeable {
+	private final SpscRing<Token<T>> ring;
+	private final Status status = new Status();
+
+	/**
+	 * Same as PipelinedTokenizer(source, 1024, 64, WaitStrategy.Park)
+	 *
+	 * @param source The Tokenizer to run in the background
+	 */
+	public PipelinedTokenizer(final Tokenizer<T> source) {
+		this(source, 1024, 64, WaitStrategy.Park);
+	}
+
+	/**
+	 * Start running source on a new thread.
+	 *
+	 * @param source The Tokenizer to run in the background
+	 * @param capacity The maximum number of tokens buffered
+	 * @param batch The number of tokens handed over at once
+	 * @param wait How both threads wait for each other
+	 */
+	public PipelinedTokenizer(final Tokenizer<T> source, final int capacity, final int batch, final WaitStrategy wait) {
+		this.ring = new SpscRing<Token<T>>(capacity, batch, wait);
+		final Thread thread = new Thread(new Producer<T>(this, source, ring, status), "lexinator-pipeline");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Fetch the next token, waiting for the lexer thread if needed.
+	 *
+	 * @return The next token, or null at the end
+	 */
+	public Token<T> getToken() {
+		while (!status.closed) {
+			final Token<T> token = ring.poll();
+			if (token != null) {
+				return token;
+			}
+			if (status.done) {
+				// Everything was published before done was set.
+				final Token<T> last = ring.poll();
+				if (last != null) {
+					return last;
+				}
+				fail();
+				return null;
+			}
+			ring.idle();
+		}
+		return null;
+	}
+
+	/**
+	 * Stop the lexer thread. getToken returns null afterwards.
+	 */
+	public void close() {
+		status.closed = true;
+	}
+
+	private void fail() {
+		final Throwable t = status.failure;
+		if (t == null) {
+			return;
+		}
+		if (t instanceof RuntimeException) {
+			throw (RuntimeException) t;
+		}
+		if (t instanceof Error) {
+			throw (Error) t;
+		}
+		throw new RuntimeException(t);
+	}
+
+	/**
+	 * The state shared by both threads, kept apart so that the lexer thread
+	 * does not need to reference the PipelinedTokenizer itself.
+	 */
+	private static final class Status {
+		volatile boolean done = false;
+		volatile boolean closed = false;
+		volatile Throwable failure = null;
+	}
+
+	private static final class Producer<T extends Enum<T>> implements Runnable, SpscRing.Cancel {
+		private final WeakReference<PipelinedTokenizer<T>> owner;
+		private final Tokenizer<T> source;
+		private final SpscRing<Token<T>> ring;
+		private final Status status;
+
+		Producer(final PipelinedTokenizer<T> owner, final Tokenizer<T> source, final SpscRing<Token<T>> ring, final Status status) {
+			this.owner = new WeakReference<PipelinedTokenizer<T>>(owner);
+			this.source = source;
+			this.ring = ring;
+			this.status = status;
+		}
+
+		public boolean cancelled() {
+			return status.closed || owner.get() == null;
+		}
+
+		public void run() {
+			try {
+				while (!cancelled()) {
+					final Token<T> token = source.getToken();
+					if (token == null) {
+						if (source instanceof Lexer && ((Lexer<?>) source).suspended()) {
+							throw new IllegalStateException("PipelinedTokenizer does not support a Lexer in follow mode");
+						}
+						break;
+					}
+					if (!ring.offer(token, this)) {
+						break;
+					}
+				}
+			} catch (Throwable t) {
+				status.failure = t;
+			} finally {
+				ring.flush();
+				status.done = true;
+			}
+		}
+	}
+}
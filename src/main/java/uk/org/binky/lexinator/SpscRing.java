@@ -0,0 +1,123 @@
+package uk.org.binky.lexinator;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded lock-free queue for exactly one producer thread and one consumer thread.
+ * Both sides publish their progress in batches, so the shared counters are
+ * written once per batch instead of once per element.
+ * The producer must call flush before it waits for anything but the ring itself.
+ *
+ * @param <E> The element type
+ */
+final class SpscRing<E> {
+	private final Object[] buffer;
+	private final int mask;
+	private final int batch;
+	private final WaitStrategy wait;
+
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+
+	// Producer side
+	private long produced = 0;
+	private long producedPublished = 0;
+	private long headCache = 0;
+
+	// Consumer side
+	private long consumed = 0;
+	private long consumedPublished = 0;
+	private long tailCache = 0;
+
+	/**
+	 * @param capacity Ring size, rounded up to a power of two
+	 * @param batch Number of elements after which progress is published
+	 * @param wait What to do while the ring is full or empty
+	 */
+	SpscRing(final int capacity, final int batch, final WaitStrategy wait) {
+		int size = 1;
+		while (size < capacity) {
+			size <<= 1;
+		}
+		this.buffer = new Object[size];
+		this.mask = size - 1;
+		this.batch = Math.max(1, Math.min(batch, size));
+		this.wait = wait;
+	}
+
+	/**
+	 * Producer: add an element, waiting for room if the ring is full.
+	 *
+	 * @param e The element
+	 * @param cancel Checked while waiting; if it returns true, the element is dropped
+	 * @return false if the element was dropped
+	 */
+	boolean offer(final E e, final Cancel cancel) {
+		if (produced - headCache > mask) {
+			headCache = head.get();
+			if (produced - headCache > mask) {
+				flush();
+				while (produced - (headCache = head.get()) > mask) {
+					if (cancel.cancelled()) {
+						return false;
+					}
+					wait.idle();
+				}
+			}
+		}
+		buffer[(int) produced & mask] = e;
+		produced++;
+		if (produced - producedPublished >= batch) {
+			flush();
+		}
+		return true;
+	}
+
+	/**
+	 * Producer: publish all elements added so far.
+	 */
+	void flush() {
+		producedPublished = produced;
+		tail.lazySet(produced);
+	}
+
+	/**
+	 * Consumer: take the next element, without waiting.
+	 *
+	 * @return The element, or null if nothing has been published yet
+	 */
+	@SuppressWarnings("unchecked")
+	E poll() {
+		if (consumed == tailCache) {
+			tailCache = tail.get();
+			if (consumed == tailCache) {
+				release();
+				return null;
+			}
+		}
+		final int i = (int) consumed & mask;
+		final E e = (E) buffer[i];
+		buffer[i] = null;
+		consumed++;
+		if (consumed - consumedPublished >= batch) {
+			release();
+		}
+		return e;
+	}
+
+	private void release() {
+		consumedPublished = consumed;
+		head.lazySet(consumed);
+	}
+
+	/**
+	 * Consumer: wait a little, according to the wait strategy.
+	 */
+	void idle() {
+		wait.idle();
+	}
+
+	interface Cancel {
+		boolean cancelled();
+	}
+}
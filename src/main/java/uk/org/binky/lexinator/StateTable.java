@@ -0,0 +1,24 @@
+package uk.org.binky.lexinator;
+
+/**
+ * A group of states identified by int codes (or enum ordinals), typically
+ * implemented as a single switch statement.
+ * Unlike State objects, moving between codes allocates nothing, and the
+ * Lexer calls the same method for every state, which the JIT can inline.
+ */
+public interface StateTable {
+	/**
+	 * Returned to leave the table. The Lexer continues with the State
+	 * given to Lexer.leave, or stops if there is none.
+	 * Errors are reported with: return leave(errorf(...));
+	 */
+	int Exit = -1;
+
+	/**
+	 * Run the state with the given code.
+	 *
+	 * @param code The state to run
+	 * @return The code of the next state, or a negative value to leave the table
+	 */
+	int stateMethod(int code);
+}
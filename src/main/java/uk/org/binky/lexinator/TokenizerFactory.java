@@ -0,0 +1,17 @@
+package uk.org.binky.lexinator;
+
+/**
+ * Creates a Tokenizer for a given file.
+ *
+ * @param <T> The token type
+ */
+public interface TokenizerFactory<T extends Enum<T>> {
+	/**
+	 * Create a Tokenizer for the file with the given name and contents.
+	 *
+	 * @param name Name of the file being parsed
+	 * @param text Contents of the file being parsed
+	 * @return A Tokenizer producing the tokens for text
+	 */
+	Tokenizer<T> newTokenizer(String name, CharSequence text);
+}
@@ -0,0 +1,41 @@
+package uk.org.binky.lexinator;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How a PipelinedTokenizer thread waits for the other side.
+ * Spin has the lowest latency but keeps a core busy,
+ * Park is the friendliest to other threads.
+ */
+public enum WaitStrategy {
+	/**
+	 * Busy-wait.
+	 */
+	Spin {
+		@Override
+		void idle() {
+		}
+	},
+	/**
+	 * Give up the processor to other threads, but stay runnable.
+	 */
+	Yield {
+		@Override
+		void idle() {
+			Thread.yield();
+		}
+	},
+	/**
+	 * Sleep for a few microseconds.
+	 */
+	Park {
+		@Override
+		void idle() {
+			LockSupport.parkNanos(PARK_NANOS);
+		}
+	};
+
+	private static final long PARK_NANOS = 10000;
+
+	abstract void idle();
+}
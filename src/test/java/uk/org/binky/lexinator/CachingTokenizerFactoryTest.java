@@ -0,0 +1,135 @@
+package uk.org.binky.lexinator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CachingTokenizerFactoryTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	static class CountingFactory implements TokenizerFactory<SampleLexer.Type> {
+		int count = 0;
+		public Tokenizer<SampleLexer.Type> newTokenizer(final String name, final CharSequence text) {
+			count++;
+			return new SampleLexer(text.toString());
+		}
+	}
+
+	private void check(final Tokenizer<SampleLexer.Type> tokenizer, final String file) throws ExpectException {
+		final Expect<SampleLexer.Type> e = new Expect<SampleLexer.Type>(tokenizer);
+		final Token<SampleLexer.Type> first = tokenizer.getToken();
+		assertEquals(file, first.file);
+		assertEquals(SampleLexer.Type.Variable, first.type);
+		assertEquals("knack", first.value);
+		e.expect(1, SampleLexer.Type.Assign, "=");
+		e.expect(1, SampleLexer.Type.Number, "5");
+		e.expect(1, SampleLexer.Type.Semi, ";");
+		e.expect(1, SampleLexer.Type.Error, "Expected variable name!");
+		e.expectEnd();
+	}
+
+	@Test
+	public void testHit() throws ExpectException {
+		final CountingFactory counter = new CountingFactory();
+		final CachingTokenizerFactory<SampleLexer.Type> cache = new CachingTokenizerFactory<SampleLexer.Type>(counter, SampleLexer.Type.class, "test-1", 1 << 20);
+		check(cache.newTokenizer("a", "knack = 5;643"), "a");
+		check(cache.newTokenizer("b", "knack = 5;643"), "b");
+		assertEquals(1, counter.count);
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		cache.newTokenizer("c", "knack = 6;");
+		assertEquals(2, counter.count);
+		assertEquals(2, cache.getMisses());
+	}
+
+	@Test
+	public void testEviction() {
+		final CountingFactory counter = new CountingFactory();
+		final CachingTokenizerFactory<SampleLexer.Type> cache = new CachingTokenizerFactory<SampleLexer.Type>(counter, SampleLexer.Type.class, "test-1", 300);
+		cache.newTokenizer("a", "a = 1;");
+		cache.newTokenizer("b", "b = 2;");
+		cache.newTokenizer("a", "a = 1;");
+		cache.newTokenizer("c", "c = 3;");
+		assertEquals(1, cache.getEvictions());
+		cache.newTokenizer("a", "a = 1;");
+		assertEquals(3, counter.count);
+		cache.newTokenizer("b", "b = 2;");
+		assertEquals(4, counter.count);
+	}
+
+	@Test
+	public void testDirectory() throws ExpectException {
+		final File dir = folder.getRoot();
+		final CountingFactory counter = new CountingFactory();
+		CachingTokenizerFactory<SampleLexer.Type> cache = new CachingTokenizerFactory<SampleLexer.Type>(counter, SampleLexer.Type.class, "test-1", 1 << 20, dir);
+		check(cache.newTokenizer("a", "knack = 5;643"), "a");
+		cache = new CachingTokenizerFactory<SampleLexer.Type>(counter, SampleLexer.Type.class, "test-1", 1 << 20, dir);
+		check(cache.newTokenizer("b", "knack = 5;643"), "b");
+		assertEquals(1, counter.count);
+		assertEquals(1, cache.getDiskHits());
+		cache = new CachingTokenizerFactory<SampleLexer.Type>(counter, SampleLexer.Type.class, "test-2", 1 << 20, dir);
+		check(cache.newTokenizer("c", "knack = 5;643"), "c");
+		assertEquals(2, counter.count);
+	}
+
+	@Test
+	public void testDamaged() throws ExpectException, IOException {
+		final File dir = folder.getRoot();
+		final CountingFactory counter = new CountingFactory();
+		new CachingTokenizerFactory<SampleLexer.Type>(counter, SampleLexer.Type.class, "test-1", 1 << 20, dir).newTokenizer("a", "knack = 5;643");
+		final File file = dir.listFiles()[0];
+		// identity (2 + 6 bytes), key (8 + 8 + 4 bytes), magic, count, then the type, line and end of each token.
+		final int[] offsets = {32, 36, 44, 36 + 5 * 12};
+		final int[] values = {-1, 1000, 1000, 3};
+		for (int i=0; i<offsets.length; i++) {
+			final RandomAccessFile f = new RandomAccessFile(file, "rw");
+			final int old;
+			try {
+				f.seek(offsets[i]);
+				old = f.readInt();
+				f.seek(offsets[i]);
+				f.writeInt(values[i]);
+			} finally {
+				f.close();
+			}
+			final CachingTokenizerFactory<SampleLexer.Type> cache = new CachingTokenizerFactory<SampleLexer.Type>(counter, SampleLexer.Type.class, "test-1", 1 << 20, dir);
+			check(cache.newTokenizer("b", "knack = 5;643"), "b");
+			assertEquals(0, cache.getDiskHits());
+			assertEquals(i + 2, counter.count);
+			final RandomAccessFile g = new RandomAccessFile(file, "rw");
+			try {
+				g.seek(offsets[i]);
+				g.writeInt(old);
+			} finally {
+				g.close();
+			}
+		}
+	}
+
+	@Test
+	public void testStoredKey() throws ExpectException, IOException {
+		final File dir = folder.getRoot();
+		final CountingFactory counter = new CountingFactory();
+		final CachingTokenizerFactory<SampleLexer.Type> cache = new CachingTokenizerFactory<SampleLexer.Type>(counter, SampleLexer.Type.class, "test-1", 1 << 20, dir);
+		cache.newTokenizer("a", "a = 1;");
+		final File a = dir.listFiles()[0];
+		cache.newTokenizer("b", "b = 2;");
+		final File b = dir.listFiles()[0].equals(a) ? dir.listFiles()[1] : dir.listFiles()[0];
+		// A file holding the tokens of another input is not used.
+		assertTrue(b.delete());
+		assertTrue(a.renameTo(b));
+		final CachingTokenizerFactory<SampleLexer.Type> fresh = new CachingTokenizerFactory<SampleLexer.Type>(counter, SampleLexer.Type.class, "test-1", 1 << 20, dir);
+		final Expect<SampleLexer.Type> e = new Expect<SampleLexer.Type>(fresh.newTokenizer("b", "b = 2;"));
+		e.expect(1, SampleLexer.Type.Variable, "b");
+		assertEquals(0, fresh.getDiskHits());
+		assertEquals(3, counter.count);
+	}
+}
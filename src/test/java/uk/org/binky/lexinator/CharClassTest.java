@@ -0,0 +1,57 @@
+package uk.org.binky.lexinator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CharClassTest {
+	@Test
+	public void testOf() {
+		final CharClass c = CharClass.of("a?~\u00e9\u4e00");
+		for (char x=0; x<200; x++) {
+			assertEquals("a?~\u00e9".indexOf(x) >= 0, c.contains(x));
+		}
+		assertTrue(c.contains('\u4e00'));
+		assertFalse(c.contains('\u4e01'));
+	}
+
+	@Test
+	public void testRangeUnion() {
+		final CharClass c = CharClass.range('a', 'f').union(CharClass.range('0', '9'));
+		assertTrue(c.contains('a'));
+		assertTrue(c.contains('f'));
+		assertTrue(c.contains('5'));
+		assertFalse(c.contains('g'));
+		assertFalse(c.contains('/'));
+	}
+
+	@Test
+	public void testWhitespace() {
+		for (char x=0; x<0x3100; x++) {
+			assertEquals(Character.isWhitespace(x), CharClass.Whitespace.contains(x));
+			assertEquals(x != '\n' && Character.isWhitespace(x), CharClass.SpaceNoLine.contains(x));
+		}
+	}
+
+	@Test
+	public void testCodePoints() {
+		final CharClass c = CharClass.of("x\ud835\udc00");
+		assertTrue(c.contains(0x1d400));
+		assertFalse(c.contains(0x1d401));
+		assertFalse(c.contains('\ud835'));
+		assertTrue(c.contains((int) 'x'));
+	}
+
+	@Test
+	public void testIdentifier() {
+		for (int x=0; x<0x3100; x++) {
+			assertEquals(Character.isUnicodeIdentifierStart(x), CharClass.IdentifierStart.contains(x));
+			assertEquals(Character.isUnicodeIdentifierPart(x), CharClass.IdentifierPart.contains(x));
+		}
+		assertTrue(CharClass.IdentifierStart.contains(0x1d400));
+		assertFalse(CharClass.IdentifierStart.contains(0x1f600));
+		assertFalse(CharClass.Whitespace.contains(0x1d400));
+	}
+}
@@ -0,0 +1,124 @@
+package uk.org.binky.lexinator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class CheckpointTest {
+	private static final String text = "a = 1;\nbb = 22;\nccc = 333;\n";
+
+	@Test
+	public void testResume() throws Exception {
+		final List<Token<SampleLexer.Type>> tokens = new ArrayList<Token<SampleLexer.Type>>();
+		final List<Checkpoint> checkpoints = new ArrayList<Checkpoint>();
+		final List<Integer> read = new ArrayList<Integer>();
+		final SampleLexer lexer = new SampleLexer(text);
+		lexer.setCheckpoints(5, new CheckpointListener() {
+			public void checkpoint(final Checkpoint checkpoint) {
+				checkpoints.add(copy(checkpoint));
+				read.add(tokens.size());
+			}
+		});
+		Token<SampleLexer.Type> token;
+		while ((token = lexer.getToken()) != null) {
+			tokens.add(token);
+		}
+		assertEquals(4, checkpoints.size());
+		for (int i=0; i<checkpoints.size(); i++) {
+			final SampleLexer resumed = new SampleLexer(text);
+			resumed.resume(checkpoints.get(i));
+			final List<Token<SampleLexer.Type>> rest = resumed.getAllTokens();
+			assertEquals(tokens.size() - read.get(i), rest.size());
+			for (int j=0; j<rest.size(); j++) {
+				assertEquals(true, tokens.get(read.get(i) + j).compare(rest.get(j)));
+			}
+		}
+	}
+
+	@Test
+	public void testResumeRest() throws ExpectException {
+		final SampleLexer lexer = new SampleLexer(text);
+		lexer.getToken();
+		lexer.getToken();
+		lexer.getToken();
+		lexer.getToken();
+		final Checkpoint first = lexer.checkpoint();
+		assertEquals(6, first.offset);
+		final SampleLexer resumed = new SampleLexer("");
+		resumed.resume(first, text.substring(6));
+		resumed.expect(2, SampleLexer.Type.Variable, "bb");
+		resumed.expect(2, SampleLexer.Type.Assign,   "=");
+		resumed.expect(2, SampleLexer.Type.Number,   "22");
+		resumed.expect(2, SampleLexer.Type.Semi,     ";");
+		// Offsets still count from the start of the whole text.
+		final Checkpoint second = resumed.checkpoint();
+		assertEquals(15, second.offset);
+		final SampleLexer again = new SampleLexer("");
+		again.resume(second, text.substring(15));
+		again.expect(3, SampleLexer.Type.Variable, "ccc");
+		assertEquals(text.substring(15), text.substring((int) second.offset));
+	}
+
+	@Test
+	public void testCursor() throws ExpectException {
+		final List<Checkpoint> checkpoints = new ArrayList<Checkpoint>();
+		final LexerCursor<SampleLexer.Type> cursor = SampleDefinition.Definition.newTokenizer("test", text);
+		cursor.setCheckpoints(5, new CheckpointListener() {
+			public void checkpoint(final Checkpoint checkpoint) {
+				checkpoints.add(checkpoint);
+			}
+		});
+		final List<Token<SampleLexer.Type>> tokens = cursor.getAllTokens();
+		assertEquals(4, checkpoints.size());
+		final Checkpoint last = checkpoints.get(checkpoints.size() - 1);
+		final LexerCursor<SampleLexer.Type> resumed = SampleDefinition.Definition.newTokenizer("test", "");
+		resumed.resume(last, text.substring((int) last.offset));
+		final List<Token<SampleLexer.Type>> rest = resumed.getAllTokens();
+		for (int j=0; j<rest.size(); j++) {
+			assertEquals(true, tokens.get(tokens.size() - rest.size() + j).compare(rest.get(j)));
+		}
+		assertEquals(SampleLexer.Type.Eof, rest.get(rest.size() - 1).type);
+		assertNull(new LexerDefinition<SampleLexer.Type>(SampleDefinition.stateVariable, SampleLexer.Type.Error).newTokenizer("test", text).checkpoint());
+	}
+
+	@Test
+	public void testNoCheckpoint() {
+		final SampleLexer lexer = new SampleLexer(text);
+		assertNotNull(lexer.checkpoint());
+		lexer.next();
+		assertNull(lexer.checkpoint());
+		lexer.back();
+		lexer.getToken();
+		assertNotNull(lexer.checkpoint());
+		assertNull(new TemplateLexer(text).checkpoint());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownState() {
+		new SampleLexer(text).resume(new Checkpoint(0, 1, "nonsense"));
+	}
+
+	private static Checkpoint copy(final Checkpoint checkpoint) {
+		try {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			final ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeObject(checkpoint);
+			out.close();
+			return (Checkpoint) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} catch (ClassNotFoundException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
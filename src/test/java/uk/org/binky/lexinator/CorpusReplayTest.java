@@ -0,0 +1,74 @@
+package uk.org.binky.lexinator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CorpusReplayTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	public static class Factory implements TokenizerFactory<SampleLexer.Type> {
+		public Tokenizer<SampleLexer.Type> newTokenizer(final String name, final CharSequence text) {
+			return new SampleLexer(text);
+		}
+	}
+
+	private void write(final File file, final String text) throws IOException {
+		final FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(text.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+	}
+
+	@Test
+	public void testRun() throws Exception {
+		final File dir = folder.newFolder("corpus");
+		write(new File(dir, "a"), "a = 1;\nb = 2;\n");
+		write(new File(dir, "b"), "c = 3;\n");
+		final File single = folder.newFile("c");
+		write(single, "d = 4;\n");
+		final CorpusReplay replay = new CorpusReplay(CorpusReplay.factory(Factory.class.getName()),
+			Arrays.asList(dir, single), Charset.forName("UTF-8"));
+		final CorpusReplay.Result result = replay.run(0, 20);
+		assertEquals(3, result.files);
+		assertTrue(result.passes >= 1);
+		assertEquals(28L * result.passes, result.bytes);
+		assertEquals(19L * result.passes, result.tokens);
+		assertTrue(result.latency(50) <= result.latency(99));
+		assertTrue(result.latency(99) <= result.latency(100));
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		result.write(new PrintStream(bytes, true, "UTF-8"));
+		final String out = bytes.toString("UTF-8");
+		assertTrue(out, out.startsWith("files=3\npasses=" + result.passes + "\n"));
+		assertTrue(out, out.contains("\nmb_per_s="));
+		assertTrue(out, out.contains("\nlatency_p99_us="));
+		assertTrue(out, out.contains("\nalloc_bytes_per_token="));
+	}
+
+	@Test
+	public void testBuckets() {
+		for (long nanos=0; nanos<100000; nanos++) {
+			final int b = CorpusReplay.bucket(nanos);
+			assertTrue(nanos <= CorpusReplay.upper(b));
+			assertTrue(b == 0 || nanos > CorpusReplay.upper(b - 1));
+			assertTrue(CorpusReplay.upper(b) - nanos <= nanos / 16);
+		}
+		assertTrue(CorpusReplay.bucket(Long.MAX_VALUE) < 61 * 16);
+		assertEquals(Long.MAX_VALUE, CorpusReplay.upper(CorpusReplay.bucket(Long.MAX_VALUE)));
+	}
+}
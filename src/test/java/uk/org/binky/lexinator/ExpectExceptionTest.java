@@ -18,5 +18,6 @@ public class ExpectExceptionTest {
 		ExpectException exception = new ExpectException(e, t);
 		assertEquals("expected/received: file(file/quack) line(1/100) type(Test/Boo) value(value/menacing)", exception.toString());
 		assertEquals("expected nothing, got: file(quack) line(100) type(Boo) value(menacing)", new ExpectException(t).toString());
+		assertEquals("received nothing, expected: file(file) line(1) type(Test) value(value)\nat token 3", new ExpectException(e, null, "at token 3").toString());
 	}
 }
@@ -0,0 +1,110 @@
+package uk.org.binky.lexinator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FollowTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testFollow() throws ExpectException {
+		final AppendableText text = new AppendableText();
+		final SampleLexer lexer = new SampleLexer(text);
+		assertNull(lexer.getToken());
+		assertTrue(lexer.suspended());
+		text.append("abc = 1");
+		lexer.expect(1, SampleLexer.Type.Variable, "abc");
+		lexer.expect(1, SampleLexer.Type.Assign,   "=");
+		assertNull(lexer.getToken());
+		assertTrue(lexer.suspended());
+		assertNull(lexer.getToken());
+		text.append("23;\nx");
+		lexer.expect(1, SampleLexer.Type.Number,   "123");
+		lexer.expect(1, SampleLexer.Type.Semi,     ";");
+		assertNull(lexer.getToken());
+		text.append(" = 4;");
+		text.close();
+		lexer.expect(2, SampleLexer.Type.Variable, "x");
+		lexer.expect(2, SampleLexer.Type.Assign,   "=");
+		lexer.expect(2, SampleLexer.Type.Number,   "4");
+		lexer.expect(2, SampleLexer.Type.Semi,     ";");
+		lexer.expect(2, SampleLexer.Type.Eof,      "EOF");
+		lexer.expectEnd();
+		assertFalse(lexer.suspended());
+	}
+
+	@Test
+	public void testFollowCursor() throws ExpectException {
+		final AppendableText text = new AppendableText();
+		final LexerCursor<SampleLexer.Type> c = SampleDefinition.Definition.newTokenizer("t", text);
+		text.append("abc = 1");
+		c.expect(1, SampleLexer.Type.Variable, "abc");
+		c.expect(1, SampleLexer.Type.Assign,   "=");
+		assertNull(c.getToken());
+		assertTrue(c.suspended());
+		text.append("23;\nx = 4;");
+		text.close();
+		c.expect(1, SampleLexer.Type.Number,   "123");
+		c.expect(1, SampleLexer.Type.Semi,     ";");
+		c.expect(2, SampleLexer.Type.Variable, "x");
+		c.expect(2, SampleLexer.Type.Assign,   "=");
+		c.expect(2, SampleLexer.Type.Number,   "4");
+		c.expect(2, SampleLexer.Type.Semi,     ";");
+		c.expect(2, SampleLexer.Type.Eof,      "EOF");
+		c.expectEnd();
+	}
+
+	@Test
+	public void testFollowMode() throws ExpectException {
+		final AppendableText text = new AppendableText();
+		final TemplateLexer lexer = new TemplateLexer("");
+		lexer.reset("test", text);
+		text.append("a {{x y");
+		// The end of the mode is not known yet
+		assertNull(lexer.getToken());
+		text.append(" }} b");
+		lexer.expect(1, SampleLexer.Type.Text, "a ");
+		lexer.expect(1, SampleLexer.Type.Variable, "x");
+		lexer.expect(1, SampleLexer.Type.Variable, "y");
+		assertNull(lexer.getToken());
+		text.close();
+		lexer.expect(1, SampleLexer.Type.Text, " b");
+		lexer.expectEnd();
+	}
+
+	@Test
+	public void testPoll() throws IOException {
+		final File file = folder.newFile("log");
+		final FileOutputStream out = new FileOutputStream(file);
+		final FileChannel channel = new FileInputStream(file).getChannel();
+		final AppendableText text = new AppendableText();
+		try {
+			final byte[] bytes = "a\u00e9b".getBytes("UTF-8");
+			out.write(bytes, 0, 2);
+			out.flush();
+			assertEquals(1, text.poll(channel));
+			assertEquals("a", text.toString());
+			assertEquals(0, text.poll(channel));
+			out.write(bytes, 2, 2);
+			out.flush();
+			assertEquals(2, text.poll(channel));
+			assertEquals("a\u00e9b", text.toString());
+		} finally {
+			out.close();
+			channel.close();
+		}
+	}
+}
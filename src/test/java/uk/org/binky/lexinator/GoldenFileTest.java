@@ -0,0 +1,128 @@
+package uk.org.binky.lexinator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class GoldenFileTest {
+	private static final String Text = "a = 1;\nbcd = 22;\ne = 333;\nx = 4;\n";
+
+	private byte[] record(final String text) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final long count = new Expect<SampleLexer.Type>(new SampleLexer(text)).recordGolden(SampleLexer.Type.class, out);
+		assertEquals(new SampleLexer(text).getAllTokens().size(), count);
+		return out.toByteArray();
+	}
+
+	private long verify(final byte[] golden, final String text, final int context) throws ExpectException, IOException {
+		return new Expect<SampleLexer.Type>(new SampleLexer(text)).expectGolden(SampleLexer.Type.class, new ByteArrayInputStream(golden), context);
+	}
+
+	@Test
+	public void testMatch() throws ExpectException, IOException {
+		assertEquals(17, verify(record(Text), Text, 2));
+		assertEquals(1, verify(record(""), "", 2));
+		// Larger than the read buffer.
+		final StringBuilder sb = new StringBuilder();
+		for (int i=0; i<1000; i++) {
+			sb.append(Text);
+		}
+		final String big = sb.toString();
+		assertEquals(new SampleLexer(big).getAllTokens().size(), verify(record(big), big, 2));
+	}
+
+	@Test
+	public void testDifference() throws IOException {
+		try {
+			verify(record(Text), "a = 1;\nbcd = 23;\ne = 333;\nx = 4;\n", 2);
+			fail("no difference found");
+		} catch (final ExpectException e) {
+			assertEquals("expected/received: file(test/test) line(2/2) type(Number/Number) value(22/23)\n"
+				+ "at token 6\n"
+				+ "  line(2) type(Variable) value(bcd)\n"
+				+ "  line(2) type(Assign) value(=)\n"
+				+ "- line(2) type(Number) value(22)\n"
+				+ "- line(2) type(Semi) value(;)\n"
+				+ "- line(3) type(Variable) value(e)\n"
+				+ "+ line(2) type(Number) value(23)\n"
+				+ "+ line(2) type(Semi) value(;)\n"
+				+ "+ line(3) type(Variable) value(e)", e.toString());
+		}
+	}
+
+	@Test
+	public void testLength() throws IOException {
+		try {
+			verify(record("a = 1;"), "a = 1;b = 2;", 1);
+			fail("no difference found");
+		} catch (final ExpectException e) {
+			assertEquals("expected/received: file(test/test) line(1/1) type(Eof/Variable) value(EOF/b)\n"
+				+ "at token 4\n"
+				+ "  line(1) type(Semi) value(;)\n"
+				+ "- line(1) type(Eof) value(EOF)\n"
+				+ "+ line(1) type(Variable) value(b)\n"
+				+ "+ line(1) type(Assign) value(=)", e.toString());
+		}
+		try {
+			verify(record(Text), "", 0);
+			fail("no difference found");
+		} catch (final ExpectException e) {
+			assertEquals("expected/received: file(test/test) line(1/1) type(Variable/Eof) value(a/EOF)\n"
+				+ "at token 0\n"
+				+ "- line(1) type(Variable) value(a)\n"
+				+ "+ line(1) type(Eof) value(EOF)", e.toString());
+		}
+	}
+
+	private static Tokenizer<SampleLexer.Type> tokens(final String... values) {
+		return new Tokenizer<SampleLexer.Type>() {
+			int i = 0;
+			public Token<SampleLexer.Type> getToken() {
+				if (i == values.length) {
+					return null;
+				}
+				return new Token<SampleLexer.Type>("test", 100 - i, SampleLexer.Type.Text, values[i++]);
+			}
+		};
+	}
+
+	@Test
+	public void testUnicode() throws ExpectException, IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new Expect<SampleLexer.Type>(tokens("\u00e9", "\ud835\udc00\u4e00", "")).recordGolden(SampleLexer.Type.class, out);
+		final Expect<SampleLexer.Type> e = new Expect<SampleLexer.Type>(tokens("\u00e9", "\ud835\udc00\u4e00", ""));
+		assertEquals(3, e.expectGolden(SampleLexer.Type.class, new ByteArrayInputStream(out.toByteArray()), 1));
+	}
+
+	@Test(expected = IOException.class)
+	public void testNotGolden() throws ExpectException, IOException {
+		verify(new byte[] {1, 2, 3}, Text, 0);
+	}
+
+	private void expectDamaged(final byte[] tail) throws ExpectException, IOException {
+		final byte[] golden = Arrays.copyOf(record(""), 5 + tail.length);
+		System.arraycopy(tail, 0, golden, 5, tail.length);
+		try {
+			verify(golden, "", 0);
+			fail("damaged golden file accepted");
+		} catch (final IOException e) {
+			// Expected.
+		}
+	}
+
+	@Test
+	public void testDamaged() throws ExpectException, IOException {
+		// A type count of 1 << 30.
+		expectDamaged(new byte[] {(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x04});
+		// A type name of Integer.MAX_VALUE characters, but the file ends.
+		expectDamaged(new byte[] {1, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07, 'E'});
+		// A negative value length.
+		expectDamaged(new byte[] {1, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x0f});
+	}
+}
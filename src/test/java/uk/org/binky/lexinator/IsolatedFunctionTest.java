@@ -4,6 +4,8 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.regex.Pattern;
+
 import org.junit.Test;
 
 public class IsolatedFunctionTest {
@@ -243,6 +245,100 @@ public class IsolatedFunctionTest {
 		assertFalse(h.spaceNoLine());
 	}
 	
+	@Test
+	public void testSpaceLines() {
+		final FunctionHelper h = new FunctionHelper(" \n\t\n X");
+		assertTrue(h.space());
+		assertEquals(3, h.mark().line);
+		assertEquals('X', h.peek());
+		h.back();
+		assertEquals(3, h.mark().line);
+		assertEquals(' ', h.peek());
+		h.back();
+		assertEquals(2, h.mark().line);
+		assertEquals('\n', h.peek());
+		h.back();
+		h.back();
+		h.back();
+		assertEquals(1, h.mark().line);
+		assertEquals(' ', h.peek());
+		assertEquals(0, h.len());
+	}
+
+	@Test
+	public void testRunBack() {
+		final FunctionHelper h = new FunctionHelper("123x");
+		assertEquals(3, h.acceptRun("0123456789"));
+		h.back();
+		assertEquals(2, h.len());
+		assertEquals('3', h.next());
+		h.back();
+		h.back();
+		h.back();
+		assertEquals(0, h.len());
+		h.back();
+		assertEquals(0, h.len());
+		assertTrue(h.find("x"));
+		h.back();
+		assertEquals("12", h.get());
+	}
+
+	@Test
+	public void testCharClassRuns() {
+		final CharClass digits = CharClass.range('0', '9');
+		final FunctionHelper h = new FunctionHelper("123abc\n\u00e9;");
+		assertFalse(h.accept(CharClass.of("abc")));
+		assertTrue(h.accept(digits));
+		assertEquals(2, h.acceptRun(digits));
+		assertEquals(0, h.acceptRun(digits));
+		assertEquals(5, h.exceptRun(CharClass.of(";")));
+		assertEquals(2, h.mark().line);
+		assertEquals(';', h.next());
+	}
+
+	@Test
+	public void testNextCodePoint() {
+		final FunctionHelper h = new FunctionHelper("a\ud835\udc00\ud835b");
+		assertEquals('a', h.nextCodePoint());
+		assertEquals(0x1d400, h.nextCodePoint());
+		assertEquals(3, h.len());
+		h.back();
+		assertEquals(1, h.len());
+		assertEquals(0x1d400, h.nextCodePoint());
+		assertEquals(0xd835, h.nextCodePoint());
+		assertEquals('b', h.nextCodePoint());
+		assertEquals(Lexer.EndOfText, h.nextCodePoint());
+	}
+
+	@Test
+	public void testAcceptIdentifier() {
+		final FunctionHelper h = new FunctionHelper("1\u00e9t\ud835\udc00\u0301 =");
+		assertEquals(0, h.acceptIdentifier());
+		assertEquals('1', h.next());
+		h.ignore();
+		assertEquals(5, h.acceptIdentifier());
+		assertEquals("\u00e9t\ud835\udc00\u0301", h.get());
+		h.back();
+		assertEquals(4, h.len());
+		h.back();
+		assertEquals(2, h.len());
+		assertEquals(3, h.acceptRun(CharClass.IdentifierPart));
+		assertFalse(h.accept(CharClass.IdentifierPart));
+		assertEquals(' ', h.next());
+		assertEquals(0, h.acceptIdentifier());
+	}
+
+	@Test
+	public void testFindLines() {
+		final FunctionHelper h = new FunctionHelper("a\nb\nc*/d");
+		assertTrue(h.find("*/"));
+		assertEquals("a\nb\nc", h.get());
+		assertEquals(3, h.mark().line);
+		assertTrue(h.string("*/"));
+		assertFalse(h.find("*/"));
+		assertEquals('d', h.peek());
+	}
+
 	@Test
 	public void testString() {
 		final FunctionHelper h = new FunctionHelper("1abc2");
@@ -254,6 +350,74 @@ public class IsolatedFunctionTest {
 		assertFalse(h.string("abc"));
 	}
 	
+	@Test
+	public void testAcceptPattern() {
+		final Pattern number = Pattern.compile("[0-9]+(\\.[0-9]+)?");
+		final Pattern comment = Pattern.compile("/\\*.*?\\*/", Pattern.DOTALL);
+		final FunctionHelper h = new FunctionHelper("x3.14/*a\nb*/y");
+		assertFalse(h.acceptPattern(number));
+		assertEquals('x', h.next());
+		h.ignore();
+		assertTrue(h.acceptPattern(number));
+		assertEquals("3.14", h.get());
+		h.ignore();
+		assertFalse(h.acceptPattern(number));
+		assertTrue(h.acceptPattern(comment));
+		assertEquals(2, h.mark().line);
+		assertEquals('y', h.peek());
+		h.back();
+		assertEquals(2, h.mark().line);
+		assertEquals('/', h.peek());
+		h.back();
+		h.back();
+		h.back();
+		assertEquals(1, h.mark().line);
+		assertEquals('\n', h.peek());
+		h.reset("test", "42");
+		assertTrue(h.acceptPattern(number));
+		assertEquals("42", h.get());
+		// More patterns than Matchers are kept for.
+		h.reset("test", "a1b2");
+		for (int i=0; i<100; i++) {
+			assertFalse(h.acceptPattern(Pattern.compile("x" + i)));
+		}
+		assertTrue(h.acceptPattern(Pattern.compile("[a-z][0-9]")));
+		assertEquals("a1", h.get());
+		assertTrue(h.acceptPattern(Pattern.compile("b2")));
+	}
+
+	@Test
+	public void testMemo() {
+		final FunctionHelper h = new FunctionHelper("ab\ncd;");
+		final int[] runs = new int[2];
+		final Attempt word = new Attempt() {
+			public boolean attempt() {
+				runs[0]++;
+				return h.exceptRun(";") > 0 && h.string(";");
+			}
+		};
+		final Attempt number = new Attempt() {
+			public boolean attempt() {
+				runs[1]++;
+				return h.acceptRun("0123456789") > 0;
+			}
+		};
+		for (int i=0; i<3; i++) {
+			assertFalse(h.memo(number));
+			assertEquals(0, h.len());
+			assertTrue(h.memo(word));
+			assertEquals("ab\ncd;", h.get());
+			assertEquals(2, h.mark().line);
+			h.retry();
+			assertEquals(1, h.mark().line);
+		}
+		assertEquals(1, runs[0]);
+		assertEquals(1, runs[1]);
+		h.reset("test", "12");
+		assertTrue(h.memo(number));
+		assertEquals(2, runs[1]);
+	}
+
 	@Test
 	public void testFind() {
 		final FunctionHelper h = new FunctionHelper("123123abc123");
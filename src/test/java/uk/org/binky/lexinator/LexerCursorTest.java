@@ -0,0 +1,88 @@
+package uk.org.binky.lexinator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.Test;
+
+public class LexerCursorTest {
+	@Test
+	public void testCursor() throws ExpectException {
+		final LexerCursor<SampleLexer.Type> c = SampleDefinition.Definition.newTokenizer("test", " hello = 123;\nbye = 456;");
+		c.expect(1, SampleLexer.Type.Variable, "hello");
+		c.expect(1, SampleLexer.Type.Assign,   "=");
+		c.expect(1, SampleLexer.Type.Number,   "123");
+		c.expect(1, SampleLexer.Type.Semi,     ";");
+		c.expect(2, SampleLexer.Type.Variable, "bye");
+		c.expect(2, SampleLexer.Type.Assign,   "=");
+		c.expect(2, SampleLexer.Type.Number,   "456");
+		c.expect(2, SampleLexer.Type.Semi,     ";");
+		c.expect(2, SampleLexer.Type.Eof,      "EOF");
+		c.expectEnd();
+	}
+
+	@Test
+	public void testKeywordAndError() throws ExpectException {
+		final LexerCursor<SampleLexer.Type> c = SampleDefinition.Definition.newTokenizer("test", "eof = 1;643");
+		c.expect(1, SampleLexer.Type.Eof,    "eof");
+		c.expect(1, SampleLexer.Type.Assign, "=");
+		c.expect(1, SampleLexer.Type.Number, "1");
+		c.expect(1, SampleLexer.Type.Semi,   ";");
+		c.expect(1, SampleLexer.Type.Error,  "Expected variable name!");
+		c.expectEnd();
+		assertNull(SampleDefinition.Definition.keyword("hello"));
+	}
+
+	@Test
+	public void testKeywordMask() throws ExpectException {
+		final LexerCursor<SampleLexer.Type> c = SampleDefinition.Definition.newTokenizer("test", "eof = 1;\nb = 2;");
+		c.setMask(EnumSet.of(SampleLexer.Type.Eof));
+		c.expect(1, SampleLexer.Type.Eof, "eof");
+		c.expect(2, SampleLexer.Type.Eof, "EOF");
+		c.expectEnd();
+		c.reset("test", "eof = 1;");
+		c.setMask(EnumSet.of(SampleLexer.Type.Variable));
+		c.expectEnd();
+	}
+
+	@Test
+	public void testReset() throws ExpectException {
+		final LexerCursor<SampleLexer.Type> c = SampleDefinition.Definition.newTokenizer("test", "a = 1;");
+		c.expect(1, SampleLexer.Type.Variable, "a");
+		c.reset("test", "b = 2;");
+		c.expect(1, SampleLexer.Type.Variable, "b");
+		c.expect(1, SampleLexer.Type.Assign,   "=");
+	}
+
+	@Test
+	public void testThreads() throws InterruptedException {
+		final StringBuilder sb = new StringBuilder();
+		for (int i=0; i<2000; i++) {
+			sb.append("abc = 123;\n");
+		}
+		final String text = sb.toString();
+		final List<Thread> threads = new ArrayList<Thread>();
+		final int[] counts = new int[8];
+		for (int i=0; i<counts.length; i++) {
+			final int n = i;
+			threads.add(new Thread() {
+				public void run() {
+					counts[n] = SampleDefinition.Definition.newTokenizer("test", text).getAllTokens().size();
+				}
+			});
+		}
+		for (final Thread t : threads) {
+			t.start();
+		}
+		for (final Thread t : threads) {
+			t.join();
+		}
+		for (final int count : counts) {
+			assertEquals(8001, count);
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package uk.org.binky.lexinator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class LexerPoolTest {
+	static class Pool extends LexerPool<SampleLexer.Type, SampleLexer> {
+		int created = 0;
+
+		Pool() {
+			super(2);
+		}
+
+		@Override
+		protected SampleLexer create(final String name, final CharSequence text) {
+			created++;
+			return new SampleLexer(text.toString());
+		}
+	}
+
+	@Test
+	public void testReuse() throws ExpectException {
+		final Pool pool = new Pool();
+		final SampleLexer first = pool.acquire("test", "a = 1;");
+		first.expect(1, SampleLexer.Type.Variable, "a");
+		pool.release(first);
+		assertEquals(1, pool.idle());
+		final SampleLexer second = pool.acquire("test", "b = 2;");
+		assertSame(first, second);
+		assertEquals(0, pool.idle());
+		second.expect(1, SampleLexer.Type.Variable, "b");
+		second.expect(1, SampleLexer.Type.Assign,   "=");
+		second.expect(1, SampleLexer.Type.Number,   "2");
+		assertEquals(1, pool.created);
+	}
+
+	@Test
+	public void testCapacity() {
+		final Pool pool = new Pool();
+		final SampleLexer a = pool.acquire("test", "a");
+		final SampleLexer b = pool.acquire("test", "b");
+		final SampleLexer c = pool.acquire("test", "c");
+		assertEquals(3, pool.created);
+		pool.release(a);
+		pool.release(b);
+		pool.release(c);
+		assertEquals(2, pool.idle());
+	}
+}
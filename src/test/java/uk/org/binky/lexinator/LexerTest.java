@@ -3,6 +3,7 @@ package uk.org.binky.lexinator;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
+import java.util.EnumSet;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -71,6 +72,30 @@ public class LexerTest {
 		e.expect(1, MyLexer.Type.Variable, "cracker");
 	}
 
+	@Test
+	public void testReset() throws ExpectException {
+		final MyLexer lexer = new MyLexer("knack = 5;643");
+		lexer.expect(1, MyLexer.Type.Variable, "knack");
+		lexer.reset("test", "\nbye = 4;");
+		lexer.expect(2, MyLexer.Type.Variable, "bye");
+		lexer.expect(2, MyLexer.Type.Assign,   "=");
+		lexer.expect(2, MyLexer.Type.Number,   "4");
+		lexer.expect(2, MyLexer.Type.Semi,     ";");
+		lexer.expect(2, MyLexer.Type.Eof,      "EOF");
+		lexer.expectEnd();
+	}
+
+	@Test
+	public void testMask() throws ExpectException {
+		final MyLexer lexer = new MyLexer("knack = 5;\nbye = 4;643");
+		lexer.setMask(EnumSet.of(MyLexer.Type.Variable, MyLexer.Type.Number));
+		lexer.expect(1, MyLexer.Type.Variable, "knack");
+		lexer.expect(1, MyLexer.Type.Number,   "5");
+		lexer.expect(2, MyLexer.Type.Variable, "bye");
+		lexer.expect(2, MyLexer.Type.Number,   "4");
+		lexer.expectEnd();
+	}
+
 	public Expect<MyLexer.Type> getExpect(final String content) {
 		return new Expect<MyLexer.Type>(new MyLexer(content));
 	}
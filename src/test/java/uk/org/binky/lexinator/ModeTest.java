@@ -0,0 +1,95 @@
+package uk.org.binky.lexinator;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ModeTest {
+	@Test
+	public void testLexerMode() throws ExpectException {
+		final TemplateLexer lexer = new TemplateLexer("a {{x y\nz}} b {{ w }}{{}}");
+		lexer.expect(1, SampleLexer.Type.Text,     "a ");
+		lexer.expect(1, SampleLexer.Type.Variable, "x");
+		lexer.expect(1, SampleLexer.Type.Variable, "y");
+		lexer.expect(2, SampleLexer.Type.Variable, "z");
+		lexer.expect(2, SampleLexer.Type.Text,     " b ");
+		lexer.expect(2, SampleLexer.Type.Variable, "w");
+		lexer.expectEnd();
+	}
+
+	@Test
+	public void testUnterminated() throws ExpectException {
+		final TemplateLexer lexer = new TemplateLexer("a {{x y");
+		lexer.expect(1, SampleLexer.Type.Text,     "a ");
+		lexer.expect(1, SampleLexer.Type.Variable, "x");
+		lexer.expect(1, SampleLexer.Type.Variable, "y");
+		lexer.expect(1, SampleLexer.Type.Error,    "Expected }}");
+		lexer.expectEnd();
+	}
+
+	@Test
+	public void testErrorInMode() throws ExpectException {
+		final TemplateLexer lexer = new TemplateLexer("a {{x 1 y}} b");
+		lexer.expect(1, SampleLexer.Type.Text,     "a ");
+		lexer.expect(1, SampleLexer.Type.Variable, "x");
+		lexer.expect(1, SampleLexer.Type.Error,    "Expected word!");
+		lexer.expectEnd();
+		assertEquals(0, lexer.modeDepth());
+	}
+
+	private static final CursorState<SampleLexer.Type> stateText = new CursorState<SampleLexer.Type>() {
+		public CursorState<SampleLexer.Type> stateMethod(final LexerCursor<SampleLexer.Type> c) {
+			if (!c.find("{{")) {
+				while (c.next() != Lexer.EndOfText) {
+				}
+				if (c.len() > 0) {
+					c.emit(SampleLexer.Type.Text);
+				}
+				return null;
+			}
+			c.emit(SampleLexer.Type.Text);
+			c.string("{{");
+			c.ignore();
+			return c.push(SampleDefinition.Definition, "}}", stateClose);
+		}
+	};
+
+	private static final CursorState<SampleLexer.Type> stateClose = new CursorState<SampleLexer.Type>() {
+		public CursorState<SampleLexer.Type> stateMethod(final LexerCursor<SampleLexer.Type> c) {
+			if (!c.string("}}")) {
+				return c.errorf("Expected }}");
+			}
+			c.ignore();
+			return stateText;
+		}
+	};
+
+	@Test
+	public void testCursorMode() throws ExpectException {
+		final LexerDefinition<SampleLexer.Type> template = new LexerDefinition<SampleLexer.Type>(stateText, SampleLexer.Type.Error);
+		final LexerCursor<SampleLexer.Type> c = template.newTokenizer("test", "x {{eof = 1;\nb = 2;}} y");
+		c.expect(1, SampleLexer.Type.Text,     "x ");
+		c.expect(1, SampleLexer.Type.Eof,      "eof");
+		c.expect(1, SampleLexer.Type.Assign,   "=");
+		c.expect(1, SampleLexer.Type.Number,   "1");
+		c.expect(1, SampleLexer.Type.Semi,     ";");
+		c.expect(2, SampleLexer.Type.Variable, "b");
+		c.expect(2, SampleLexer.Type.Assign,   "=");
+		c.expect(2, SampleLexer.Type.Number,   "2");
+		c.expect(2, SampleLexer.Type.Semi,     ";");
+		c.expect(2, SampleLexer.Type.Eof,      "EOF");
+		c.expect(2, SampleLexer.Type.Text,     " y");
+		c.expectEnd();
+	}
+
+	@Test
+	public void testCursorErrorInMode() throws ExpectException {
+		final LexerDefinition<SampleLexer.Type> template = new LexerDefinition<SampleLexer.Type>(stateText, SampleLexer.Type.Error);
+		final LexerCursor<SampleLexer.Type> c = template.newTokenizer("test", "x {{a = ;}} y");
+		c.expect(1, SampleLexer.Type.Text,     "x ");
+		c.expect(1, SampleLexer.Type.Variable, "a");
+		c.expect(1, SampleLexer.Type.Assign,   "=");
+		c.expect(1, SampleLexer.Type.Error,    "Expected number!");
+		c.expectEnd();
+	}
+}
@@ -0,0 +1,109 @@
+package uk.org.binky.lexinator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class PipelinedTokenizerTest {
+	private static String program(final int n) {
+		final StringBuilder sb = new StringBuilder();
+		for (int i=0; i<n; i++) {
+			sb.append("abc = 123;\n");
+		}
+		return sb.toString();
+	}
+
+	private void checkAll(final WaitStrategy wait) throws ExpectException {
+		final int n = 1000;
+		final Expect<SampleLexer.Type> e = new Expect<SampleLexer.Type>(new PipelinedTokenizer<SampleLexer.Type>(new SampleLexer(program(n)), 16, 4, wait));
+		for (int i=1; i<=n; i++) {
+			e.expect(i, SampleLexer.Type.Variable, "abc");
+			e.expect(i, SampleLexer.Type.Assign,   "=");
+			e.expect(i, SampleLexer.Type.Number,   "123");
+			e.expect(i, SampleLexer.Type.Semi,     ";");
+		}
+		e.expect(n+1, SampleLexer.Type.Eof, "EOF");
+		e.expectEnd();
+		e.expectEnd();
+	}
+
+	@Test
+	public void testSpin() throws ExpectException {
+		checkAll(WaitStrategy.Spin);
+	}
+
+	@Test
+	public void testYield() throws ExpectException {
+		checkAll(WaitStrategy.Yield);
+	}
+
+	@Test
+	public void testPark() throws ExpectException {
+		checkAll(WaitStrategy.Park);
+	}
+
+	@Test
+	public void testFailure() throws ExpectException {
+		final Tokenizer<SampleLexer.Type> failing = new Tokenizer<SampleLexer.Type>() {
+			private int count = 0;
+			public Token<SampleLexer.Type> getToken() {
+				if (count++ < 3) {
+					return new Token<SampleLexer.Type>("test", count, SampleLexer.Type.Number, "1");
+				}
+				throw new IllegalStateException("boom");
+			}
+		};
+		final PipelinedTokenizer<SampleLexer.Type> p = new PipelinedTokenizer<SampleLexer.Type>(failing);
+		final Expect<SampleLexer.Type> e = new Expect<SampleLexer.Type>(p);
+		e.expect(1, SampleLexer.Type.Number, "1");
+		e.expect(2, SampleLexer.Type.Number, "1");
+		e.expect(3, SampleLexer.Type.Number, "1");
+		try {
+			p.getToken();
+		} catch (IllegalStateException ex) {
+			assertEquals("boom", ex.getMessage());
+			return;
+		}
+		throw new AssertionError("expected the producer's exception");
+	}
+
+	@Test
+	public void testClose() {
+		final PipelinedTokenizer<SampleLexer.Type> p = new PipelinedTokenizer<SampleLexer.Type>(new SampleLexer(program(10000)), 8, 2, WaitStrategy.Park);
+		p.getToken();
+		p.close();
+		assertNull(p.getToken());
+	}
+
+	@Test
+	public void testAbandoned() throws InterruptedException {
+		final Thread[] producer = new Thread[1];
+		final Tokenizer<SampleLexer.Type> endless = new Tokenizer<SampleLexer.Type>() {
+			public Token<SampleLexer.Type> getToken() {
+				producer[0] = Thread.currentThread();
+				return new Token<SampleLexer.Type>("endless", 1, SampleLexer.Type.Number, "1");
+			}
+		};
+		PipelinedTokenizer<SampleLexer.Type> p = new PipelinedTokenizer<SampleLexer.Type>(endless, 8, 2, WaitStrategy.Park);
+		p.getToken();
+		p = null;
+		for (int i=0; i<100 && producer[0].isAlive(); i++) {
+			System.gc();
+			producer[0].join(100);
+		}
+		assertFalse(producer[0].isAlive());
+	}
+
+	@Test
+	public void testFollow() {
+		final PipelinedTokenizer<SampleLexer.Type> p = new PipelinedTokenizer<SampleLexer.Type>(new SampleLexer(new AppendableText()));
+		try {
+			p.getToken();
+		} catch (IllegalStateException ex) {
+			return;
+		}
+		throw new AssertionError("expected follow mode to be rejected");
+	}
+}
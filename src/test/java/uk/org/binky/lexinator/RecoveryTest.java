@@ -0,0 +1,80 @@
+package uk.org.binky.lexinator;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class RecoveryTest {
+	private static final String text = "a = ;\nb = 2;\nc 3;\nd = 4;";
+
+	private SampleLexer recovering(final int maxErrors) {
+		final SampleLexer lexer = new SampleLexer(text);
+		lexer.recover(CharClass.of("\n"), maxErrors);
+		return lexer;
+	}
+
+	@Test
+	public void testRecovery() throws ExpectException {
+		final SampleLexer lexer = recovering(100);
+		lexer.expect(1, SampleLexer.Type.Variable, "a");
+		lexer.expect(1, SampleLexer.Type.Assign,   "=");
+		lexer.expect(1, SampleLexer.Type.Error,    "Expected number!");
+		lexer.expect(2, SampleLexer.Type.Variable, "b");
+		lexer.expect(2, SampleLexer.Type.Assign,   "=");
+		lexer.expect(2, SampleLexer.Type.Number,   "2");
+		lexer.expect(2, SampleLexer.Type.Semi,     ";");
+		lexer.expect(3, SampleLexer.Type.Variable, "c");
+		lexer.expect(3, SampleLexer.Type.Error,    "Expected assignment character!");
+		lexer.expect(4, SampleLexer.Type.Variable, "d");
+		lexer.expect(4, SampleLexer.Type.Assign,   "=");
+		lexer.expect(4, SampleLexer.Type.Number,   "4");
+		lexer.expect(4, SampleLexer.Type.Semi,     ";");
+		lexer.expect(4, SampleLexer.Type.Eof,      "EOF");
+		lexer.expectEnd();
+		assertEquals(2, lexer.errors());
+	}
+
+	@Test
+	public void testMaxErrors() throws ExpectException {
+		final SampleLexer lexer = recovering(2);
+		lexer.expect(1, SampleLexer.Type.Variable, "a");
+		lexer.expect(1, SampleLexer.Type.Assign,   "=");
+		lexer.expect(1, SampleLexer.Type.Error,    "Expected number!");
+		lexer.expect(2, SampleLexer.Type.Variable, "b");
+		lexer.expect(2, SampleLexer.Type.Assign,   "=");
+		lexer.expect(2, SampleLexer.Type.Number,   "2");
+		lexer.expect(2, SampleLexer.Type.Semi,     ";");
+		lexer.expect(3, SampleLexer.Type.Variable, "c");
+		lexer.expect(3, SampleLexer.Type.Error,    "Expected assignment character!");
+		lexer.expectEnd();
+	}
+
+	@Test
+	public void testProgress() throws ExpectException {
+		final SampleLexer lexer = new SampleLexer("!!\n!!");
+		lexer.recover(CharClass.of("!"), 10);
+		lexer.expect(1, SampleLexer.Type.Error, "Expected variable name!");
+		lexer.expect(1, SampleLexer.Type.Error, "Expected variable name!");
+		lexer.expect(1, SampleLexer.Type.Error, "Expected variable name!");
+		lexer.expect(2, SampleLexer.Type.Error, "Expected variable name!");
+		lexer.expect(2, SampleLexer.Type.Error, "Expected variable name!");
+		lexer.expect(2, SampleLexer.Type.Eof,   "EOF");
+		lexer.expectEnd();
+	}
+
+	@Test
+	public void testCursor() throws ExpectException {
+		final LexerCursor<SampleLexer.Type> c = SampleDefinition.Definition.newTokenizer("test", text);
+		c.setRecovery(CharClass.of("\n"), SampleDefinition.stateVariable, 100);
+		c.expect(1, SampleLexer.Type.Variable, "a");
+		c.expect(1, SampleLexer.Type.Assign,   "=");
+		c.expect(1, SampleLexer.Type.Error,    "Expected number!");
+		c.expect(2, SampleLexer.Type.Variable, "b");
+		for (int i=0; i<4; i++) {
+			c.getToken();
+		}
+		c.expect(3, SampleLexer.Type.Error,    "Expected assignment character!");
+		c.expect(4, SampleLexer.Type.Variable, "d");
+		assertEquals(2, c.errors());
+	}
+}
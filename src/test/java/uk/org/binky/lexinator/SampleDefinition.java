@@ -0,0 +1,81 @@
+package uk.org.binky.lexinator;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The same language as SampleLexer, as a LexerDefinition, with "eof" as a keyword.
+ */
+final class SampleDefinition {
+	static final CharClass Letters = CharClass.range('a', 'z');
+	static final CharClass Digits = CharClass.range('1', '9');
+
+	static final CursorState<SampleLexer.Type> stateVariable = new CursorState<SampleLexer.Type>() {
+		public CursorState<SampleLexer.Type> stateMethod(final LexerCursor<SampleLexer.Type> c) {
+			c.space();
+			c.ignore();
+			if (c.eof()) {
+				c.emitString(SampleLexer.Type.Eof, "EOF");
+				return null;
+			}
+			if (c.acceptRun(Letters) == 0) {
+				return c.errorf("Expected variable name!");
+			}
+			c.emitKeyword(SampleLexer.Type.Variable);
+			return stateAssign;
+		}
+	};
+
+	static final CursorState<SampleLexer.Type> stateAssign = new CursorState<SampleLexer.Type>() {
+		public CursorState<SampleLexer.Type> stateMethod(final LexerCursor<SampleLexer.Type> c) {
+			c.space();
+			c.ignore();
+			if (!c.string("=")) {
+				return c.errorf("Expected assignment character!");
+			}
+			c.emit(SampleLexer.Type.Assign);
+			return stateNumber;
+		}
+	};
+
+	static final CursorState<SampleLexer.Type> stateNumber = new CursorState<SampleLexer.Type>() {
+		public CursorState<SampleLexer.Type> stateMethod(final LexerCursor<SampleLexer.Type> c) {
+			c.space();
+			c.ignore();
+			if (c.acceptRun(Digits) == 0) {
+				return c.errorf("Expected number!");
+			}
+			c.emit(SampleLexer.Type.Number);
+			return stateSemi;
+		}
+	};
+
+	static final CursorState<SampleLexer.Type> stateSemi = new CursorState<SampleLexer.Type>() {
+		public CursorState<SampleLexer.Type> stateMethod(final LexerCursor<SampleLexer.Type> c) {
+			c.space();
+			c.ignore();
+			if (!c.string(";")) {
+				return c.errorf("Expected semicolon!");
+			}
+			c.emit(SampleLexer.Type.Semi);
+			return stateVariable;
+		}
+	};
+
+	static final LexerDefinition<SampleLexer.Type> Definition = new LexerDefinition<SampleLexer.Type>(stateVariable, SampleLexer.Type.Error, null, keywords(), states());
+
+	private static Map<String, SampleLexer.Type> keywords() {
+		final Map<String, SampleLexer.Type> keywords = new HashMap<String, SampleLexer.Type>();
+		keywords.put("eof", SampleLexer.Type.Eof);
+		return keywords;
+	}
+
+	private static Map<String, CursorState<SampleLexer.Type>> states() {
+		final Map<String, CursorState<SampleLexer.Type>> states = new HashMap<String, CursorState<SampleLexer.Type>>();
+		states.put("variable", stateVariable);
+		states.put("assign", stateAssign);
+		states.put("number", stateNumber);
+		states.put("semi", stateSemi);
+		return states;
+	}
+}
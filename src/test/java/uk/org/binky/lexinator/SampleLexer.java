@@ -0,0 +1,86 @@
+package uk.org.binky.lexinator;
+
+/**
+ * The MyLexer grammar of LexerTest, with what the tests of the other features need:
+ * named states for checkpoints, error recovery, a CharSequence constructor,
+ * and a Text token type for modes.
+ */
+final class SampleLexer extends Lexer<SampleLexer.Type> {
+	SampleLexer(CharSequence text) {
+		super("test", text, Type.Error);
+		this.setState(stateVariable);
+		this.nameState("variable", stateVariable);
+		this.nameState("assign", stateAssign);
+		this.nameState("number", stateNumber);
+		this.nameState("semi", stateSemi);
+	}
+	
+	void recover(final CharClass resync, final int maxErrors) {
+		setRecovery(resync, stateVariable, maxErrors);
+	}
+
+	enum Type {
+		Eof, Error, Warning,
+		Variable,
+		Assign,
+		Number,
+		Semi,
+		Text
+	}
+	
+	private State emitEof() {
+		emitString(Type.Eof, "EOF");
+		return null;
+	}
+
+	private final State stateVariable = new State() {
+		public State stateMethod() {
+			space();
+			ignore();
+			if (eof()) {
+				return emitEof();
+			}
+			if (acceptRun("abcdefghijklmnopqrstuvwxyz") == 0) {
+				return errorf("Expected variable name!");
+			}
+			emit(Type.Variable);
+			return stateAssign;
+		}
+	};
+	
+	private final State stateAssign = new State() {
+		public State stateMethod() {
+			space();
+			ignore();
+			if (!string("=")) {
+				return errorf("Expected assignment character!");
+			}
+			emit(Type.Assign);
+			return stateNumber;
+		}
+	};
+	
+	private final State stateNumber = new State() {
+		public State stateMethod() {
+			space();
+			ignore();
+			if (acceptRun("123456789") == 0) {
+				return errorf("Expected number!");
+			}
+			emit(Type.Number);
+			return stateSemi;
+		}
+	};
+	
+	private final State stateSemi = new State() {
+		public State stateMethod() {
+			space();
+			ignore();
+			if (!string(";")) {
+				return errorf("Expected semicolon!");
+			}
+			emit(Type.Semi);
+			return stateVariable;
+		}
+	};
+}
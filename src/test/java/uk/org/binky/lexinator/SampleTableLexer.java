@@ -0,0 +1,93 @@
+package uk.org.binky.lexinator;
+
+/**
+ * The same language as SampleLexer, using a StateTable.
+ * When mixed is set, variable names are lexed by a State object instead.
+ */
+class SampleTableLexer extends Lexer<SampleLexer.Type> implements StateTable {
+	static final int Variable = 0;
+	static final int Assign = 1;
+	static final int Number = 2;
+	static final int Semi = 3;
+
+	private final boolean mixed;
+
+	SampleTableLexer(final String text, final boolean mixed) {
+		super("test", text, SampleLexer.Type.Error);
+		this.mixed = mixed;
+		if (mixed) {
+			setState(stateVariable);
+		} else {
+			setState(this, Variable);
+		}
+	}
+
+	private final State stateVariable = new State() {
+		public State stateMethod() {
+			space();
+			ignore();
+			if (eof()) {
+				emitString(SampleLexer.Type.Eof, "EOF");
+				return null;
+			}
+			if (acceptRun("abcdefghijklmnopqrstuvwxyz") == 0) {
+				return errorf("Expected variable name!");
+			}
+			emit(SampleLexer.Type.Variable);
+			return enter(SampleTableLexer.this, Assign);
+		}
+	};
+
+	/**
+	 * Recovery continues in the table, at Variable.
+	 */
+	private final State stateRecover = new State() {
+		public State stateMethod() {
+			return enter(SampleTableLexer.this, Variable);
+		}
+	};
+
+	void recover(final CharClass resync, final int maxErrors) {
+		setRecovery(resync, stateRecover, maxErrors);
+	}
+
+	public int stateMethod(final int code) {
+		space();
+		ignore();
+		switch (code) {
+		case Variable:
+			if (eof()) {
+				emitString(SampleLexer.Type.Eof, "EOF");
+				return Exit;
+			}
+			if (acceptRun("abcdefghijklmnopqrstuvwxyz") == 0) {
+				return leave(errorf("Expected variable name!"));
+			}
+			emit(SampleLexer.Type.Variable);
+			return Assign;
+		case Assign:
+			if (!string("=")) {
+				return leave(errorf("Expected assignment character!"));
+			}
+			emit(SampleLexer.Type.Assign);
+			return Number;
+		case Number:
+			if (acceptRun("123456789") == 0) {
+				return leave(errorf("Expected number!"));
+			}
+			emit(SampleLexer.Type.Number);
+			return Semi;
+		case Semi:
+			if (!string(";")) {
+				return leave(errorf("Expected semicolon!"));
+			}
+			emit(SampleLexer.Type.Semi);
+			if (mixed) {
+				return leave(stateVariable);
+			}
+			return Variable;
+		default:
+			throw new IllegalStateException("unknown state " + code);
+		}
+	}
+}
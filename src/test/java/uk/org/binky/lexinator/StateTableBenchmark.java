@@ -0,0 +1,85 @@
+package uk.org.binky.lexinator;
+
+/**
+ * Compares lexing with State objects (SampleLexer) to lexing with a StateTable (SampleTableLexer).
+ * Run the main method; it is not part of the test suite.
+ * Both are warmed up for a fixed time, then measured in alternating iterations
+ * of a fixed time each, so that drift affects both alike. The mean throughput
+ * is printed with its standard deviation, minimum and maximum over the iterations;
+ * differences within the spread should not be taken as a result.
+ * Usage: StateTableBenchmark [warmup ms] [iteration ms] [iterations]
+ */
+public class StateTableBenchmark {
+	interface Factory {
+		Tokenizer<SampleLexer.Type> create(String text);
+	}
+
+	/**
+	 * Lex text over and over for at least the given time.
+	 *
+	 * @return Throughput in millions of tokens per second
+	 */
+	private static double run(final Factory factory, final String text, final long millis) {
+		long count = 0;
+		final long start = System.nanoTime();
+		final long end = start + millis * 1000000L;
+		long now;
+		do {
+			final Tokenizer<SampleLexer.Type> t = factory.create(text);
+			while (t.getToken() != null) {
+				count++;
+			}
+			now = System.nanoTime();
+		} while (now < end);
+		return count * 1000.0 / (now - start);
+	}
+
+	private static void report(final String name, final double[] samples) {
+		double sum = 0;
+		double min = Double.MAX_VALUE;
+		double max = 0;
+		for (final double s : samples) {
+			sum += s;
+			min = Math.min(min, s);
+			max = Math.max(max, s);
+		}
+		final double mean = sum / samples.length;
+		double squares = 0;
+		for (final double s : samples) {
+			squares += (s - mean) * (s - mean);
+		}
+		final double stddev = samples.length > 1 ? Math.sqrt(squares / (samples.length - 1)) : 0;
+		System.out.printf("%-8s %8.2f Mtokens/s  +- %5.2f  (min %8.2f  max %8.2f  n=%d)%n", name, mean, stddev, min, max, samples.length);
+	}
+
+	public static void main(final String[] args) {
+		final long warmup = args.length > 0 ? Long.parseLong(args[0]) : 5000;
+		final long iteration = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+		final int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		final StringBuilder sb = new StringBuilder();
+		for (int i=0; i<10000; i++) {
+			sb.append("abc = 123;\n");
+		}
+		final String text = sb.toString();
+		final Factory objects = new Factory() {
+			public Tokenizer<SampleLexer.Type> create(final String text) {
+				return new SampleLexer(text);
+			}
+		};
+		final Factory table = new Factory() {
+			public Tokenizer<SampleLexer.Type> create(final String text) {
+				return new SampleTableLexer(text, false);
+			}
+		};
+		run(objects, text, warmup);
+		run(table, text, warmup);
+		final double[] objectSamples = new double[iterations];
+		final double[] tableSamples = new double[iterations];
+		for (int i=0; i<iterations; i++) {
+			objectSamples[i] = run(objects, text, iteration);
+			tableSamples[i] = run(table, text, iteration);
+		}
+		report("State", objectSamples);
+		report("Table", tableSamples);
+	}
+}
@@ -0,0 +1,62 @@
+package uk.org.binky.lexinator;
+
+import org.junit.Test;
+
+public class StateTableTest {
+	@Test
+	public void testTable() throws ExpectException {
+		final Expect<SampleLexer.Type> e = new Expect<SampleLexer.Type>(new SampleTableLexer(" hello = 123;\nbye = 456;", false));
+		e.expect(1, SampleLexer.Type.Variable, "hello");
+		e.expect(1, SampleLexer.Type.Assign,   "=");
+		e.expect(1, SampleLexer.Type.Number,   "123");
+		e.expect(1, SampleLexer.Type.Semi,     ";");
+		e.expect(2, SampleLexer.Type.Variable, "bye");
+		e.expect(2, SampleLexer.Type.Assign,   "=");
+		e.expect(2, SampleLexer.Type.Number,   "456");
+		e.expect(2, SampleLexer.Type.Semi,     ";");
+		e.expect(2, SampleLexer.Type.Eof,      "EOF");
+		e.expectEnd();
+	}
+
+	@Test
+	public void testError() throws ExpectException {
+		final Expect<SampleLexer.Type> e = new Expect<SampleLexer.Type>(new SampleTableLexer("knack = 5", false));
+		e.expect(1, SampleLexer.Type.Variable, "knack");
+		e.expect(1, SampleLexer.Type.Assign,   "=");
+		e.expect(1, SampleLexer.Type.Number,   "5");
+		e.expect(1, SampleLexer.Type.Error,    "Expected semicolon!");
+		e.expectEnd();
+	}
+
+	@Test
+	public void testRecovery() throws ExpectException {
+		final SampleTableLexer lexer = new SampleTableLexer("a = ;\nb = 2;", false);
+		lexer.recover(CharClass.of("\n"), 10);
+		lexer.expect(1, SampleLexer.Type.Variable, "a");
+		lexer.expect(1, SampleLexer.Type.Assign,   "=");
+		lexer.expect(1, SampleLexer.Type.Error,    "Expected number!");
+		lexer.expect(2, SampleLexer.Type.Variable, "b");
+		lexer.expect(2, SampleLexer.Type.Assign,   "=");
+		lexer.expect(2, SampleLexer.Type.Number,   "2");
+		lexer.expect(2, SampleLexer.Type.Semi,     ";");
+		lexer.expect(2, SampleLexer.Type.Eof,      "EOF");
+		lexer.expectEnd();
+	}
+
+	@Test
+	public void testMixed() throws ExpectException {
+		final SampleTableLexer lexer = new SampleTableLexer("a = 1;\nb = 2;", true);
+		lexer.expect(1, SampleLexer.Type.Variable, "a");
+		lexer.expect(1, SampleLexer.Type.Assign,   "=");
+		lexer.expect(1, SampleLexer.Type.Number,   "1");
+		lexer.expect(1, SampleLexer.Type.Semi,     ";");
+		lexer.expect(2, SampleLexer.Type.Variable, "b");
+		lexer.expect(2, SampleLexer.Type.Assign,   "=");
+		lexer.expect(2, SampleLexer.Type.Number,   "2");
+		lexer.expect(2, SampleLexer.Type.Semi,     ";");
+		lexer.expect(2, SampleLexer.Type.Eof,      "EOF");
+		lexer.expectEnd();
+		lexer.reset("test", "c = 3;");
+		lexer.expect(1, SampleLexer.Type.Variable, "c");
+	}
+}
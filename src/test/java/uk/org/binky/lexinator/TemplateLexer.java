@@ -0,0 +1,55 @@
+package uk.org.binky.lexinator;
+
+/**
+ * Text with embedded lists of words between {{ and }}.
+ */
+class TemplateLexer extends Lexer<SampleLexer.Type> {
+	TemplateLexer(final String text) {
+		super("test", text, SampleLexer.Type.Error);
+		setState(stateText);
+	}
+
+	private final State stateText = new State() {
+		public State stateMethod() {
+			if (!find("{{")) {
+				while (next() != EndOfText) {
+				}
+				if (len() > 0) {
+					emit(SampleLexer.Type.Text);
+				}
+				return null;
+			}
+			if (len() > 0) {
+				emit(SampleLexer.Type.Text);
+			}
+			string("{{");
+			ignore();
+			return pushMode(stateWords, "}}", stateClose);
+		}
+	};
+
+	private final State stateWords = new State() {
+		public State stateMethod() {
+			space();
+			ignore();
+			if (eof()) {
+				return null;
+			}
+			if (acceptRun("abcdefghijklmnopqrstuvwxyz") == 0) {
+				return errorf("Expected word!");
+			}
+			emit(SampleLexer.Type.Variable);
+			return this;
+		}
+	};
+
+	private final State stateClose = new State() {
+		public State stateMethod() {
+			if (!string("}}")) {
+				return errorf("Expected }}");
+			}
+			ignore();
+			return stateText;
+		}
+	};
+}